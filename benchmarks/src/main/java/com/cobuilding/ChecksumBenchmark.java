@@ -0,0 +1,91 @@
+package com.cobuilding;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SHA-256 одного большого файла и проверка всего клиента по манифесту:
+ * полная (deep) и инкрементальная, когда индекс уже знает размеры и mtime.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ChecksumBenchmark {
+
+    @Param({"5000"})
+    public int libraries;
+
+    @Param({"40000"})
+    public int assets;
+
+    @Param({"256"})
+    public int largeFileMegabytes;
+
+    private Path workDir;
+    private Path tree;
+    private Path largeFile;
+    private ClientManifest manifest;
+    private IntegrityIndex index;
+
+    @Setup(Level.Trial)
+    public void createTree() throws IOException {
+        workDir = Files.createTempDirectory("bench-checksum");
+        tree = workDir.resolve("tree");
+        SyntheticClient.create(tree, libraries, assets);
+        manifest = SyntheticClient.manifest(tree);
+
+        largeFile = workDir.resolve("large.bin");
+        byte[] block = new byte[1024 * 1024];
+        new Random(7).nextBytes(block);
+        try (OutputStream out = Files.newOutputStream(largeFile)) {
+            for (int i = 0; i < largeFileMegabytes; i++) {
+                out.write(block);
+            }
+        }
+
+        index = IntegrityIndex.load(workDir.resolve("integrity-index.txt"));
+        index.verify(manifest, tree, true, Runtime.getRuntime().availableProcessors(), (done, total) -> {});
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanUp() throws IOException {
+        SyntheticClient.deleteTree(workDir);
+    }
+
+    @Benchmark
+    public String sha256LargeFile() throws IOException {
+        return Checksums.sha256(largeFile);
+    }
+
+    @Benchmark
+    public List<String> verifyDeep() throws IOException {
+        return index.verify(manifest, tree, true, Runtime.getRuntime().availableProcessors(), (done, total) -> {});
+    }
+
+    @Benchmark
+    public List<String> verifyIncremental() throws IOException {
+        return index.verify(manifest, tree, false, Runtime.getRuntime().availableProcessors(), (done, total) -> {});
+    }
+}
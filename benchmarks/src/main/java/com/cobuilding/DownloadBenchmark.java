@@ -0,0 +1,133 @@
+package com.cobuilding;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Скачивание архива через {@link SegmentedDownloader} с HTTP-серверов в том же
+ * процессе: один поток против нескольких Range-сегментов, вместе с хэшем на лету.
+ * Несколько серверов изображают зеркала; i-е отвечает с задержкой i * latencyMillis.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DownloadBenchmark {
+
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+    @Param({"256"})
+    public int megabytes;
+
+    @Param({"1", "6"})
+    public int segments;
+
+    @Param({"1", "3"})
+    public int mirrors;
+
+    @Param({"0", "50"})
+    public int latencyMillis;
+
+    private byte[] payload;
+    private final List<HttpServer> servers = new ArrayList<>();
+    private HttpClient client;
+    private Path workDir;
+    private Path target;
+    private final List<String> urls = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void startServer() throws IOException {
+        payload = new byte[megabytes * 1024 * 1024];
+        new Random(3).nextBytes(payload);
+        for (int i = 0; i < mirrors; i++) {
+            long delay = (long) i * latencyMillis;
+            HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+            server.createContext("/client.zip", exchange -> serve(exchange, delay));
+            server.setExecutor(Executors.newCachedThreadPool());
+            server.start();
+            servers.add(server);
+            urls.add("http://127.0.0.1:" + server.getAddress().getPort() + "/client.zip");
+        }
+        client = HttpClient.newHttpClient();
+        workDir = Files.createTempDirectory("bench-download");
+        target = workDir.resolve("client.zip");
+    }
+
+    @Setup(Level.Iteration)
+    public void removeDownloaded() throws IOException {
+        Files.deleteIfExists(target);
+        Files.deleteIfExists(target.resolveSibling("client.zip.part"));
+        Files.deleteIfExists(target.resolveSibling("client.zip.part.meta"));
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() throws IOException {
+        servers.forEach(server -> server.stop(0));
+        SyntheticClient.deleteTree(workDir);
+    }
+
+    @Benchmark
+    public String download() throws IOException, InterruptedException {
+        return new SegmentedDownloader(client, "AuroraLauncher/bench", segments).download(urls, target, (done, total) -> {});
+    }
+
+    private void serve(HttpExchange exchange, long delayMillis) throws IOException {
+        try (exchange) {
+            if (delayMillis > 0) {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            exchange.getResponseHeaders().add("ETag", "\"bench\"");
+            exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            Matcher matcher = range == null ? null : RANGE.matcher(range);
+            int from = 0;
+            int to = payload.length - 1;
+            if (matcher != null && matcher.matches()) {
+                from = Integer.parseInt(matcher.group(1));
+                if (!matcher.group(2).isEmpty()) to = Math.min(to, Integer.parseInt(matcher.group(2)));
+                exchange.getResponseHeaders().add("Content-Range", "bytes " + from + "-" + to + "/" + payload.length);
+                exchange.sendResponseHeaders(206, to - from + 1);
+            } else {
+                exchange.sendResponseHeaders(200, payload.length);
+            }
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(payload, from, to - from + 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.cobuilding;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сборка classpath перед запуском: холодная (обход libraries и запись argfile)
+ * и из кэша, когда читаются только кэш и сохраненный отпечаток дерева.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LaunchClasspathBenchmark {
+
+    @Param({"5000"})
+    public int libraries;
+
+    private Path tree;
+
+    @Setup(Level.Trial)
+    public void createTree() throws IOException {
+        tree = Files.createTempDirectory("bench-classpath");
+        SyntheticClient.create(tree, libraries, 0);
+        LaunchClasspath.treeChanged(tree);
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanUp() throws IOException {
+        SyntheticClient.deleteTree(tree);
+    }
+
+    @Benchmark
+    public LaunchClasspath.Spec resolveCold() throws IOException {
+        Files.deleteIfExists(tree.resolve("launch-cache.properties"));
+        return LaunchClasspath.resolve(tree, "1.0");
+    }
+
+    @Benchmark
+    public LaunchClasspath.Spec resolveCached() throws IOException {
+        return LaunchClasspath.resolve(tree, "1.0");
+    }
+
+    @Benchmark
+    public String findFabricVersion() throws IOException {
+        return LaunchClasspath.findFabricVersion(tree);
+    }
+}
@@ -0,0 +1,89 @@
+package com.cobuilding;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Синтетическое дерево клиента с раскладкой настоящего: maven-библиотеки,
+ * объекты ассетов в 256 папках и версия Fabric. Содержимое случайное, но
+ * детерминированное, поэтому прогоны сравнимы между собой.
+ */
+final class SyntheticClient {
+
+    static final String FABRIC_VERSION = "fabric-loader-0.16.14-1.21.5";
+
+    private SyntheticClient() {}
+
+    static void create(Path root, int libraries, int assets) throws IOException {
+        Random random = new Random(42);
+        for (int i = 0; i < libraries; i++) {
+            String group = "org/synthetic/group" + (i % 97);
+            String artifact = "lib" + i;
+            String version = (1 + i % 5) + "." + (i % 13) + "." + (i % 7);
+            Path jar = root.resolve("libraries").resolve(group).resolve(artifact).resolve(version)
+                    .resolve(artifact + "-" + version + ".jar");
+            write(jar, 1024 + random.nextInt(31 * 1024), random);
+        }
+        for (int i = 0; i < assets; i++) {
+            String name = String.format("%040x", (long) i * 2654435761L + 0x9E3779B97F4A7C15L);
+            write(root.resolve("assets/objects").resolve(name.substring(0, 2)).resolve(name), 512 + random.nextInt(7 * 1024), random);
+        }
+        Path versionDir = root.resolve("versions").resolve(FABRIC_VERSION);
+        write(versionDir.resolve(FABRIC_VERSION + ".jar"), 256 * 1024, random);
+        Files.writeString(versionDir.resolve(FABRIC_VERSION + ".json"),
+                "{\"id\":\"" + FABRIC_VERSION + "\",\"mainClass\":\"" + LaunchClasspath.DEFAULT_MAIN_CLASS + "\"}");
+    }
+
+    static ClientManifest manifest(Path root) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (Path file : files(root)) {
+            sb.append(Checksums.sha256(file)).append(' ').append(Files.size(file)).append(' ')
+                    .append(root.relativize(file).toString().replace('\\', '/')).append('\n');
+        }
+        return ClientManifest.parse(sb.toString());
+    }
+
+    static void zip(Path root, Path zipFile) throws IOException {
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zipFile))) {
+            for (Path file : files(root)) {
+                out.putNextEntry(new ZipEntry(root.relativize(file).toString().replace('\\', '/')));
+                Files.copy(file, out);
+                out.closeEntry();
+            }
+        }
+    }
+
+    static void deleteTree(Path root) throws IOException {
+        if (!Files.exists(root)) return;
+        try (Stream<Path> walk = Files.walk(root)) {
+            for (Path path : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private static List<Path> files(Path root) throws IOException {
+        try (Stream<Path> walk = Files.walk(root)) {
+            return walk.filter(Files::isRegularFile).sorted().toList();
+        }
+    }
+
+    private static void write(Path file, int size, Random random) throws IOException {
+        Files.createDirectories(file.getParent());
+        byte[] data = new byte[size];
+        random.nextBytes(data);
+        // Половина блока повторяется, чтобы архив сжимался хотя бы немного, как настоящие jar
+        System.arraycopy(data, 0, data, size / 2, size - size / 2);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            out.write(data);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.cobuilding;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Удаление дерева клиента: fork/join-удаление и, для сравнения, прежний способ —
+ * собрать весь Files.walk, отсортировать в обратном порядке и удалять по одному.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TreeDeleterBenchmark {
+
+    @Param({"5000"})
+    public int libraries;
+
+    @Param({"40000"})
+    public int assets;
+
+    @Param({"4"})
+    public int threads;
+
+    private Path workDir;
+    private Path tree;
+    private TreeDeleter deleter;
+
+    @Setup(Level.Trial)
+    public void createDeleter() throws IOException {
+        workDir = Files.createTempDirectory("bench-delete");
+        deleter = new TreeDeleter(workDir.resolve("trash"), threads);
+    }
+
+    @Setup(Level.Iteration)
+    public void createTree() throws IOException {
+        tree = workDir.resolve("tree");
+        SyntheticClient.deleteTree(tree);
+        SyntheticClient.create(tree, libraries, assets);
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanUp() throws IOException {
+        SyntheticClient.deleteTree(workDir);
+    }
+
+    @Benchmark
+    public TreeDeleter.Result forkJoinDelete() {
+        return deleter.delete(tree, (done, total) -> {});
+    }
+
+    @Benchmark
+    public void walkSortDelete() throws IOException {
+        SyntheticClient.deleteTree(tree);
+    }
+}
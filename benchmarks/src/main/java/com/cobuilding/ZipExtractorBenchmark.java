@@ -0,0 +1,69 @@
+package com.cobuilding;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/** Распаковка архива клиента целиком, как при полной установке. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ZipExtractorBenchmark {
+
+    @Param({"5000"})
+    public int libraries;
+
+    @Param({"40000"})
+    public int assets;
+
+    @Param({"1", "8"})
+    public int threads;
+
+    private Path workDir;
+    private Path zipFile;
+    private Path destDir;
+
+    @Setup(Level.Trial)
+    public void createArchive() throws IOException {
+        workDir = Files.createTempDirectory("bench-unzip");
+        Path tree = workDir.resolve("tree");
+        SyntheticClient.create(tree, libraries, assets);
+        zipFile = workDir.resolve("client.zip");
+        SyntheticClient.zip(tree, zipFile);
+        SyntheticClient.deleteTree(tree);
+        destDir = workDir.resolve("dest");
+    }
+
+    @Setup(Level.Iteration)
+    public void cleanDestination() throws IOException {
+        SyntheticClient.deleteTree(destDir);
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanUp() throws IOException {
+        SyntheticClient.deleteTree(workDir);
+    }
+
+    @Benchmark
+    public void extract() throws IOException {
+        new ZipExtractor(threads).extract(zipFile, destDir, (done, total) -> {});
+    }
+}
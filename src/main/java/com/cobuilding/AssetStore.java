@@ -0,0 +1,329 @@
+package com.cobuilding;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Ресурсы игры в раскладке Minecraft: {@code assets/indexes/<id>.json} перечисляет
+ * объекты, а сами объекты лежат в {@code assets/objects/<xx>/<sha1>} под именем своего
+ * хэша. Поэтому проверка сводится к имени и размеру, хэш считается только при глубокой
+ * проверке, а недостающие объекты качаются параллельно прямо с серверов Mojang.
+ * Объект с тем же хэшем в новой версии не качается повторно, так что папка
+ * переживает обновления клиента.
+ */
+final class AssetStore {
+
+    static final String DIRECTORY_NAME = "assets";
+    // Раньше передавался игре всегда; остается на случай, если версию не удалось определить
+    static final String DEFAULT_INDEX_ID = "1.21.5";
+    static final String OBJECT_URL_TEMPLATE = "https://resources.download.minecraft.net/%s/%s";
+
+    private static final String VERSION_MANIFEST_URL = "https://piston-meta.mojang.com/mc/game/version_manifest_v2.json";
+    private static final String USER_AGENT = "AuroraLauncher/1.0";
+    private static final Pattern OBJECT = Pattern.compile("\\{([^{}]*)}");
+    private static final Pattern HASH = Pattern.compile("\"hash\"\\s*:\\s*\"([0-9a-fA-F]{40})\"");
+    private static final Pattern SIZE = Pattern.compile("\"size\"\\s*:\\s*(\\d+)");
+    private static final Pattern SHA1 = Pattern.compile("\"sha1\"\\s*:\\s*\"([0-9a-fA-F]{40})\"");
+    private static final Pattern URL = Pattern.compile("\"url\"\\s*:\\s*\"([^\"]+)\"");
+    private static final Pattern ASSETS = Pattern.compile("\"assets\"\\s*:\\s*\"([^\"]+)\"");
+    private static final Pattern ASSET_INDEX = Pattern.compile("\"assetIndex\"\\s*:\\s*\\{([^{}]*)}");
+    private static final Pattern ID = Pattern.compile("\"id\"\\s*:\\s*\"([^\"]+)\"");
+    private static final Pattern INHERITS_FROM = Pattern.compile("\"inheritsFrom\"\\s*:\\s*\"([^\"]+)\"");
+
+    record AssetObject(String hash, long size) {
+        String relativePath() {
+            return hash.substring(0, 2) + "/" + hash;
+        }
+    }
+
+    private final Path assetsDir;
+    private final HttpClient httpClient;
+    private final List<String> objectUrlTemplates;
+    private final int threads;
+    // Зеркала, к которым не удалось подключиться: тысячи мелких объектов не должны ждать их по очереди
+    private final Set<String> unreachable = ConcurrentHashMap.newKeySet();
+
+    /** @param objectUrlTemplates шаблоны адресов объекта с двумя {@code %s}: первые два символа хэша и сам хэш */
+    AssetStore(Path gameDir, HttpClient httpClient, List<String> objectUrlTemplates, int threads) {
+        this.assetsDir = gameDir.resolve(DIRECTORY_NAME);
+        this.httpClient = httpClient;
+        this.objectUrlTemplates = objectUrlTemplates;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Id индекса ресурсов для установленной версии: из json версии Fabric или версии,
+     * от которой она наследуется, иначе самый свежий индекс в папке.
+     */
+    static String resolveIndexId(Path gameDir, String fabricVersion) {
+        String declared = null;
+        if (fabricVersion != null) {
+            String json = readVersionJson(gameDir, fabricVersion);
+            declared = declaredIndexId(json);
+            String parent = json != null ? firstGroup(INHERITS_FROM, json) : null;
+            if (declared == null && parent != null) declared = declaredIndexId(readVersionJson(gameDir, parent));
+        }
+        Path indexesDir = gameDir.resolve(DIRECTORY_NAME).resolve("indexes");
+        if (declared != null && Files.isRegularFile(indexesDir.resolve(declared + ".json"))) return declared;
+        try (Stream<Path> stream = Files.list(indexesDir)) {
+            String newest = stream.filter(p -> p.getFileName().toString().endsWith(".json"))
+                    .max(Comparator.comparingLong(AssetStore::lastModified))
+                    .map(p -> p.getFileName().toString().replaceFirst("\\.json$", ""))
+                    .orElse(null);
+            if (newest != null && declared == null) return newest;
+        } catch (IOException ignored) {
+            // Папки индексов еще нет
+        }
+        return declared != null ? declared : DEFAULT_INDEX_ID;
+    }
+
+    /** Версия Minecraft, от которой наследуется версия Fabric, или null. */
+    static String gameVersion(Path gameDir, String fabricVersion) {
+        String json = fabricVersion != null ? readVersionJson(gameDir, fabricVersion) : null;
+        return json != null ? firstGroup(INHERITS_FROM, json) : null;
+    }
+
+    /**
+     * Скачивает индекс с серверов Mojang, если его нет на диске.
+     *
+     * @param gameVersion версия Minecraft, по json которой ищется индекс; null — только локальный
+     */
+    void ensureIndex(String indexId, String gameVersion) throws IOException, InterruptedException {
+        Path indexFile = indexFile(indexId);
+        if (Files.isRegularFile(indexFile)) return;
+        if (gameVersion == null) throw new IOException("Индекс ресурсов " + indexId + " отсутствует, а версия игры неизвестна");
+
+        String versionUrl = null;
+        Matcher entries = OBJECT.matcher(downloadText(VERSION_MANIFEST_URL));
+        while (entries.find()) {
+            String entry = entries.group(1);
+            if (gameVersion.equals(firstGroup(ID, entry))) {
+                versionUrl = firstGroup(URL, entry);
+                break;
+            }
+        }
+        if (versionUrl == null) throw new IOException("Версия " + gameVersion + " не найдена в списке версий Mojang");
+
+        String assetIndex = firstGroup(ASSET_INDEX, downloadText(versionUrl));
+        if (assetIndex == null || !indexId.equals(firstGroup(ID, assetIndex))) {
+            throw new IOException("В json версии " + gameVersion + " нет индекса ресурсов " + indexId);
+        }
+        String url = firstGroup(URL, assetIndex);
+        String sha1 = firstGroup(SHA1, assetIndex);
+        if (url == null || sha1 == null) throw new IOException("Индекс ресурсов " + indexId + " описан не полностью");
+        Files.createDirectories(indexFile.getParent());
+        download(url, sha1, -1, indexFile);
+    }
+
+    /** Объекты индекса без повторов: разные имена ресурсов часто указывают на один файл. */
+    List<AssetObject> loadIndex(String indexId) throws IOException {
+        String json = Files.readString(indexFile(indexId));
+        Map<String, AssetObject> objects = new LinkedHashMap<>();
+        Matcher matcher = OBJECT.matcher(json);
+        while (matcher.find()) {
+            String body = matcher.group(1);
+            String hash = firstGroup(HASH, body);
+            String size = firstGroup(SIZE, body);
+            if (hash == null || size == null) continue;
+            String lower = hash.toLowerCase();
+            objects.putIfAbsent(lower, new AssetObject(lower, Long.parseLong(size)));
+        }
+        if (objects.isEmpty()) throw new IOException("Индекс ресурсов " + indexId + " пуст или поврежден");
+        return new ArrayList<>(objects.values());
+    }
+
+    /**
+     * @param deep пересчитать SHA-1 каждого объекта, а не только сверить размер
+     * @return отсутствующие и поврежденные объекты
+     */
+    List<AssetObject> findMissing(List<AssetObject> objects, boolean deep, ProgressListener listener)
+            throws IOException, InterruptedException {
+        List<AssetObject> missing = new ArrayList<>();
+        if (!deep) {
+            for (AssetObject object : objects) {
+                Path file = objectFile(object);
+                if (!Files.isRegularFile(file) || Files.size(file) != object.size()) missing.add(object);
+            }
+            listener.onProgress(objects.size(), objects.size());
+            return missing;
+        }
+
+        ConcurrentLinkedQueue<AssetObject> damaged = new ConcurrentLinkedQueue<>();
+        AtomicLong checked = new AtomicLong();
+        runParallel(objects, object -> {
+            Path file = objectFile(object);
+            if (!Files.isRegularFile(file) || Files.size(file) != object.size() || !object.hash().equals(sha1(file))) {
+                damaged.add(object);
+            }
+            listener.onProgress(checked.incrementAndGet(), objects.size());
+        });
+        missing.addAll(damaged);
+        return missing;
+    }
+
+    /** Качает объекты параллельно; каждый сверяется с SHA-1 из своего имени. */
+    void fetch(List<AssetObject> objects, ProgressListener listener) throws IOException, InterruptedException {
+        long total = objects.stream().mapToLong(AssetObject::size).sum();
+        AtomicLong done = new AtomicLong();
+        runParallel(objects, object -> {
+            Path target = objectFile(object);
+            Files.createDirectories(target.getParent());
+            IOException last = new IOException("Все зеркала ресурсов недоступны");
+            boolean fetched = false;
+            for (String template : objectUrlTemplates) {
+                if (unreachable.contains(template)) continue;
+                try {
+                    download(String.format(template, object.hash().substring(0, 2), object.hash()), object.hash(), object.size(), target);
+                    fetched = true;
+                    break;
+                } catch (ConnectException | HttpConnectTimeoutException e) {
+                    if (unreachable.add(template)) System.err.println("Зеркало ресурсов недоступно: " + template);
+                    last = e;
+                } catch (IOException e) {
+                    last = e;
+                }
+            }
+            if (!fetched) throw last;
+            listener.onProgress(done.addAndGet(object.size()), total);
+        });
+    }
+
+    private interface ObjectTask {
+        void run(AssetObject object) throws IOException, InterruptedException;
+    }
+
+    private void runParallel(List<AssetObject> objects, ObjectTask task) throws IOException, InterruptedException {
+        if (objects.isEmpty()) return;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (AssetObject object : objects) {
+                futures.add(executor.submit(() -> {
+                    task.run(object);
+                    return null;
+                }));
+            }
+            IOException first = null;
+            int failed = 0;
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    failed++;
+                    if (first == null) {
+                        first = e.getCause() instanceof IOException io ? io : new IOException("Ошибка обработки ресурса", e.getCause());
+                    }
+                }
+            }
+            if (first != null) throw new IOException("Не удалось обработать ресурсов: " + failed + " (" + first.getMessage() + ")", first);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void download(String url, String sha1, long size, Path target) throws IOException, InterruptedException {
+        Path partPath = target.resolveSibling(target.getFileName() + ".part");
+        try {
+            HttpRequest request = HttpRequest.newBuilder().uri(URI.create(url)).header("User-Agent", USER_AGENT).build();
+            HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            MessageDigest md = newSha1();
+            try (InputStream in = new DigestInputStream(response.body(), md)) {
+                if (response.statusCode() != 200) throw new IOException("Сервер ответил с ошибкой " + response.statusCode() + " для " + url);
+                Files.copy(in, partPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+            if ((size >= 0 && Files.size(partPath) != size) || !Checksums.toHex(md.digest()).equalsIgnoreCase(sha1)) {
+                throw new IOException("Файл " + url + " поврежден при скачивании");
+            }
+            Files.move(partPath, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(partPath);
+        }
+    }
+
+    private String downloadText(String url) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create(url)).header("User-Agent", USER_AGENT).build();
+        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) throw new IOException("Сервер ответил с ошибкой " + response.statusCode() + " для " + url);
+        return response.body();
+    }
+
+    private Path indexFile(String indexId) {
+        return assetsDir.resolve("indexes").resolve(indexId + ".json");
+    }
+
+    private Path objectFile(AssetObject object) {
+        return assetsDir.resolve("objects").resolve(object.hash().substring(0, 2)).resolve(object.hash());
+    }
+
+    private static String sha1(Path file) throws IOException {
+        MessageDigest md = newSha1();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), md)) {
+            in.transferTo(java.io.OutputStream.nullOutputStream());
+        }
+        return Checksums.toHex(md.digest());
+    }
+
+    private static MessageDigest newSha1() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("Алгоритм SHA-1 не поддерживается", e);
+        }
+    }
+
+    private static String readVersionJson(Path gameDir, String version) {
+        try {
+            return Files.readString(gameDir.resolve("versions").resolve(version).resolve(version + ".json"));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static String declaredIndexId(String versionJson) {
+        if (versionJson == null) return null;
+        String assetIndex = firstGroup(ASSET_INDEX, versionJson);
+        String id = assetIndex != null ? firstGroup(ID, assetIndex) : null;
+        return id != null ? id : firstGroup(ASSETS, versionJson);
+    }
+
+    private static String firstGroup(Pattern pattern, String text) {
+        Matcher matcher = pattern.matcher(text);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.cobuilding;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Бинарный патч одного файла: новая версия собирается из кусков старой и вставок.
+ * <p>
+ * Формат: заголовок {@code AURPATCH1}, дальше сжатый Deflate поток — размер результата
+ * и команды COPY (смещение и длина в старом файле), ADD (длина и байты) и END.
+ * Jar-архивы сжимают каждый класс отдельно, поэтому несколько измененных классов
+ * меняют только свои участки файла, а остальное уходит в COPY.
+ */
+final class BinaryPatch {
+
+    private static final byte[] MAGIC = "AURPATCH1".getBytes(StandardCharsets.US_ASCII);
+    private static final byte OP_END = 0;
+    private static final byte OP_COPY = 1;
+    private static final byte OP_ADD = 2;
+    // Размер блока, по которому ищутся совпадения со старым файлом
+    private static final int BLOCK = 64;
+    private static final int HASH_BASE = 0x01000193;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Один опубликованный патч из {@code patches.txt}. */
+    record Patch(String fromSha256, String toSha256, long size, String tag, String asset) {}
+
+    /**
+     * Список опубликованных патчей. Файл накопительный: каждый релиз дописывает свои
+     * патчи к списку прошлого, так что старые версии доходят до новой цепочкой.
+     * Строка: {@code <старый sha256> <новый sha256> <размер патча> <тег релиза> <имя файла>}.
+     */
+    static final class Index {
+
+        static final Index EMPTY = new Index(List.of());
+
+        private static final int MAX_CHAIN = 16;
+
+        private final Map<String, List<Patch>> byFrom = new HashMap<>();
+
+        private Index(List<Patch> patches) {
+            for (Patch patch : patches) {
+                byFrom.computeIfAbsent(patch.fromSha256(), k -> new ArrayList<>()).add(patch);
+            }
+        }
+
+        static Index parse(String content) throws IOException {
+            List<Patch> patches = new ArrayList<>();
+            for (String rawLine : content.split("\\R")) {
+                String line = rawLine.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] parts = line.split("\\s+");
+                if (parts.length != 5) throw new IOException("Некорректная строка списка патчей: " + line);
+                try {
+                    patches.add(new Patch(parts[0].toLowerCase(), parts[1].toLowerCase(), Long.parseLong(parts[2]), parts[3], parts[4]));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Некорректный размер в списке патчей: " + line, e);
+                }
+            }
+            return new Index(patches);
+        }
+
+        /**
+         * Самая короткая по объему цепочка патчей от одного хэша к другому.
+         *
+         * @return пустой список, если цепочки нет или она не меньше {@code maxBytes}
+         */
+        List<Patch> chain(String fromSha256, String toSha256, long maxBytes) {
+            String from = fromSha256.toLowerCase();
+            String to = toSha256.toLowerCase();
+            if (from.equals(to) || !byFrom.containsKey(from)) return List.of();
+
+            record Step(String sha, long bytes, int length) {}
+            Map<String, Long> best = new HashMap<>(Map.of(from, 0L));
+            Map<String, Patch> via = new HashMap<>();
+            PriorityQueue<Step> queue = new PriorityQueue<>((a, b) -> Long.compare(a.bytes(), b.bytes()));
+            queue.add(new Step(from, 0, 0));
+            while (!queue.isEmpty()) {
+                Step step = queue.poll();
+                if (step.bytes() > best.get(step.sha())) continue;
+                if (step.sha().equals(to)) break;
+                if (step.length() >= MAX_CHAIN) continue;
+                for (Patch patch : byFrom.getOrDefault(step.sha(), List.of())) {
+                    long bytes = step.bytes() + patch.size();
+                    if (bytes >= maxBytes || bytes >= best.getOrDefault(patch.toSha256(), Long.MAX_VALUE)) continue;
+                    best.put(patch.toSha256(), bytes);
+                    via.put(patch.toSha256(), patch);
+                    queue.add(new Step(patch.toSha256(), bytes, step.length() + 1));
+                }
+            }
+            if (!via.containsKey(to)) return List.of();
+            List<Patch> chain = new ArrayList<>();
+            for (String sha = to; !sha.equals(from); sha = via.get(sha).fromSha256()) {
+                chain.add(via.get(sha));
+            }
+            Collections.reverse(chain);
+            return chain;
+        }
+    }
+
+    private BinaryPatch() {
+    }
+
+    /**
+     * Собирает новый файл из старого и патча.
+     *
+     * @return SHA-256 собранного файла, посчитанный на лету
+     * @throws IOException если патч испорчен или не подходит к старому файлу
+     */
+    static String apply(Path oldFile, InputStream patch, Path target) throws IOException {
+        byte[] magic = patch.readNBytes(MAGIC.length);
+        if (!Arrays.equals(magic, MAGIC)) throw new IOException("Файл не является патчем клиента");
+
+        MessageDigest md = Checksums.newSha256();
+        DataInputStream in = new DataInputStream(new InflaterInputStream(patch));
+        try (FileChannel old = FileChannel.open(oldFile, StandardOpenOption.READ);
+             OutputStream out = new DigestOutputStream(new BufferedOutputStream(Files.newOutputStream(target), BUFFER_SIZE), md)) {
+            long expectedSize = in.readLong();
+            long oldSize = old.size();
+            long written = 0;
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (true) {
+                byte op = in.readByte();
+                if (op == OP_END) break;
+                if (op == OP_COPY) {
+                    long position = in.readLong();
+                    long length = in.readLong();
+                    if (position < 0 || length < 0 || position + length > oldSize) {
+                        throw new IOException("Патч ссылается за пределы старого файла");
+                    }
+                    copyRange(old, position, length, out, buffer);
+                    written += length;
+                } else if (op == OP_ADD) {
+                    long length = in.readLong();
+                    if (length < 0) throw new IOException("Патч испорчен");
+                    for (long left = length; left > 0; ) {
+                        int chunk = (int) Math.min(buffer.length, left);
+                        in.readFully(buffer, 0, chunk);
+                        out.write(buffer, 0, chunk);
+                        left -= chunk;
+                    }
+                    written += length;
+                } else {
+                    throw new IOException("Неизвестная команда в патче: " + op);
+                }
+                if (written > expectedSize) throw new IOException("Патч собирает файл больше заявленного");
+            }
+            if (written != expectedSize) throw new IOException("Патч собрал " + written + " байт вместо " + expectedSize);
+        } catch (EOFException e) {
+            throw new IOException("Патч оборван", e);
+        }
+        return Checksums.toHex(md.digest());
+    }
+
+    /**
+     * Строит патч от старого файла к новому. Нужен при публикации релиза; оба файла
+     * читаются в память целиком.
+     */
+    static void create(Path oldFile, Path newFile, Path patchFile) throws IOException {
+        byte[] old = Files.readAllBytes(oldFile);
+        byte[] current = Files.readAllBytes(newFile);
+
+        Map<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= old.length; i += BLOCK) {
+            blocks.putIfAbsent(hash(old, i), i);
+        }
+        int highPower = 1;
+        for (int i = 1; i < BLOCK; i++) highPower *= HASH_BASE;
+
+        Path tmp = patchFile.resolveSibling(patchFile.getFileName() + ".tmp");
+        try (OutputStream file = new BufferedOutputStream(Files.newOutputStream(tmp), BUFFER_SIZE)) {
+            file.write(MAGIC);
+            Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+            try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(file, deflater, BUFFER_SIZE))) {
+                out.writeLong(current.length);
+                int addStart = 0;
+                int i = 0;
+                int h = current.length >= BLOCK ? hash(current, 0) : 0;
+                while (i + BLOCK <= current.length) {
+                    Integer candidate = blocks.get(h);
+                    if (candidate != null && Arrays.equals(old, candidate, candidate + BLOCK, current, i, i + BLOCK)) {
+                        int oldStart = candidate;
+                        int newStart = i;
+                        // Совпадение часто начинается раньше границы блока
+                        while (newStart > addStart && oldStart > 0 && old[oldStart - 1] == current[newStart - 1]) {
+                            oldStart--;
+                            newStart--;
+                        }
+                        int length = i + BLOCK - newStart;
+                        while (oldStart + length < old.length && newStart + length < current.length
+                                && old[oldStart + length] == current[newStart + length]) {
+                            length++;
+                        }
+                        writeAdd(out, current, addStart, newStart - addStart);
+                        out.writeByte(OP_COPY);
+                        out.writeLong(oldStart);
+                        out.writeLong(length);
+                        i = newStart + length;
+                        addStart = i;
+                        if (i + BLOCK <= current.length) h = hash(current, i);
+                        continue;
+                    }
+                    if (i + BLOCK < current.length) {
+                        h = (h - (current[i] & 0xff) * highPower) * HASH_BASE + (current[i + BLOCK] & 0xff);
+                    }
+                    i++;
+                }
+                writeAdd(out, current, addStart, current.length - addStart);
+                out.writeByte(OP_END);
+            } finally {
+                deflater.end();
+            }
+        }
+        Files.move(tmp, patchFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeAdd(DataOutputStream out, byte[] data, int offset, int length) throws IOException {
+        if (length == 0) return;
+        out.writeByte(OP_ADD);
+        out.writeLong(length);
+        out.write(data, offset, length);
+    }
+
+    private static int hash(byte[] data, int offset) {
+        int h = 0;
+        for (int i = 0; i < BLOCK; i++) h = h * HASH_BASE + (data[offset + i] & 0xff);
+        return h;
+    }
+
+    private static void copyRange(FileChannel channel, long position, long length, OutputStream out, byte[] buffer) throws IOException {
+        ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+        long left = length;
+        while (left > 0) {
+            wrapped.clear().limit((int) Math.min(buffer.length, left));
+            int read = channel.read(wrapped, position);
+            if (read < 0) throw new IOException("Старый файл короче, чем ожидает патч");
+            out.write(buffer, 0, read);
+            position += read;
+            left -= read;
+        }
+    }
+}
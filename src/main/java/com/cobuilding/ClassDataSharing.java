@@ -0,0 +1,116 @@
+package com.cobuilding;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Архив AppCDS для JVM игры: классы Fabric, Minecraft и модов один раз разбираются
+ * и проверяются, а следующие запуски отображают их готовыми из архива.
+ * <p>
+ * Первый запуск установленной версии идет с {@code -XX:ArchiveClassesAtExit} во
+ * временный файл; архив принимается, только если игра закрылась без ошибки. Имя
+ * архива содержит отпечаток classpath (пути, размеры и время изменения jar) и
+ * runtime, так что после обновления клиента или Java старый архив просто не
+ * подходит и удаляется, а новый пишется заново.
+ */
+final class ClassDataSharing {
+
+    static final String DIRECTORY_NAME = "cds";
+
+    private static final String ARCHIVE_PREFIX = "game-";
+    private static final String ARCHIVE_SUFFIX = ".jsa";
+    private static final String PENDING_SUFFIX = ".jsa.pending";
+    // Динамические архивы появились в JDK 13
+    private static final int MIN_JAVA_VERSION = 13;
+
+    private final Path archive;
+    private final Path pending;
+    private final boolean dumping;
+
+    private ClassDataSharing(Path archive, Path pending, boolean dumping) {
+        this.archive = archive;
+        this.pending = pending;
+        this.dumping = dumping;
+    }
+
+    /**
+     * @param javaHome папка runtime, из которой запускается игра
+     * @return null, если runtime не умеет динамические архивы
+     */
+    static ClassDataSharing prepare(Path gameDir, Path javaHome, List<Path> classpath) throws IOException {
+        if (!supportsDynamicArchive(javaHome)) return null;
+
+        Path directory = gameDir.resolve(DIRECTORY_NAME);
+        Files.createDirectories(directory);
+        String name = ARCHIVE_PREFIX + fingerprint(javaHome, classpath);
+        Path archive = directory.resolve(name + ARCHIVE_SUFFIX);
+        Path pending = directory.resolve(name + PENDING_SUFFIX);
+        try (Stream<Path> stream = Files.list(directory)) {
+            for (Path stale : stream.filter(p -> !p.getFileName().toString().startsWith(name)).toList()) {
+                Files.deleteIfExists(stale);
+            }
+        }
+        // Игра из командной строки переживает лаунчер, и ее код выхода мы не узнали:
+        // JVM пишет архив только при штатном завершении, так что принимаем его
+        if (!Files.exists(archive) && Files.isRegularFile(pending) && Files.size(pending) > 0) {
+            Files.move(pending, archive, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        if (Files.isRegularFile(archive)) return new ClassDataSharing(archive, pending, false);
+        Files.deleteIfExists(pending);
+        return new ClassDataSharing(archive, pending, true);
+    }
+
+    /** @return true, если этот запуск записывает архив, а не использует его */
+    boolean dumping() {
+        return dumping;
+    }
+
+    List<String> jvmArguments() {
+        if (dumping) return List.of("-XX:ArchiveClassesAtExit=" + pending.toAbsolutePath());
+        return List.of("-XX:SharedArchiveFile=" + archive.toAbsolutePath());
+    }
+
+    /** Принимает записанный архив после успешного запуска и выбрасывает после неудачного. */
+    void onGameExit(int exitCode) {
+        if (!dumping) return;
+        try {
+            if (exitCode == 0 && Files.isRegularFile(pending) && Files.size(pending) > 0) {
+                Files.move(pending, archive, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                System.out.println("Архив классов для быстрого запуска готов: " + archive.getFileName());
+            } else {
+                Files.deleteIfExists(pending);
+            }
+        } catch (IOException e) {
+            System.err.println("Не удалось сохранить архив классов: " + e.getMessage());
+        }
+    }
+
+    private static boolean supportsDynamicArchive(Path javaHome) {
+        // Динамический архив надстраивается над базовым архивом JDK; в урезанном runtime его может не быть
+        boolean hasBaseArchive = Files.isRegularFile(javaHome.resolve("lib").resolve("server").resolve("classes.jsa"))
+                || Files.isRegularFile(javaHome.resolve("bin").resolve("server").resolve("classes.jsa"));
+        return hasBaseArchive && JvmTuning.javaVersion(javaHome) >= MIN_JAVA_VERSION;
+    }
+
+    private static String fingerprint(Path javaHome, List<Path> classpath) throws IOException {
+        MessageDigest md = Checksums.newSha256();
+        // lib/modules переписывается при любой замене runtime
+        update(md, javaHome.toAbsolutePath().resolve("lib").resolve("modules"));
+        for (Path jar : classpath) {
+            update(md, jar.toAbsolutePath());
+        }
+        return Checksums.toHex(md.digest()).substring(0, 16);
+    }
+
+    private static void update(MessageDigest md, Path file) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        md.update((file + "|" + attrs.size() + "|" + attrs.lastModifiedTime().toMillis() + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,155 @@
+package com.cobuilding;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Пофайловый манифест релиза: строки вида {@code <sha256> <size> <path>}.
+ * Пути относительные, через '/', строки с '#' считаются комментариями.
+ */
+final class ClientManifest {
+
+    record Entry(String path, long size, String sha256) {}
+
+    // Данные игрока на верхнем уровне папки клиента: игра переписывает их сама
+    private static final Set<String> PLAYER_DATA = Set.of("options.txt", "servers.dat", "saves", "screenshots", "logs");
+
+    record Delta(List<Entry> toDownload, List<String> toDelete) {
+        long downloadSize() {
+            return toDownload.stream().mapToLong(Entry::size).sum();
+        }
+    }
+
+    private final Map<String, Entry> entries;
+
+    private ClientManifest(Map<String, Entry> entries) {
+        this.entries = entries;
+    }
+
+    static ClientManifest parse(String content) throws IOException {
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        for (String rawLine : content.split("\\R")) {
+            String line = rawLine.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] parts = line.split("\\s+", 3);
+            if (parts.length < 3) {
+                throw new IOException("Некорректная строка манифеста: " + line);
+            }
+            String path = normalizePath(parts[2]);
+            try {
+                entries.put(path, new Entry(path, Long.parseLong(parts[1]), parts[0].toLowerCase()));
+            } catch (NumberFormatException e) {
+                throw new IOException("Некорректный размер в манифесте: " + line, e);
+            }
+        }
+        return new ClientManifest(entries);
+    }
+
+    static ClientManifest load(Path file) {
+        if (!Files.exists(file)) return null;
+        try {
+            return parse(Files.readString(file));
+        } catch (IOException e) {
+            System.err.println("Не удалось прочитать манифест " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    void save(Path file) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (Entry entry : entries.values()) {
+            sb.append(entry.sha256()).append(' ').append(entry.size()).append(' ').append(entry.path()).append('\n');
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(tmp, sb.toString());
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    Collection<Entry> entries() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    Entry get(String path) {
+        return entries.get(path);
+    }
+
+    /**
+     * Файлы, которые ставятся один раз: настройки и данные игрока и настройки модов в
+     * {@code mods}. Игра переписывает их, так что сверять их с релизом при проверке и
+     * чинить — значит сбрасывать настройки игрока при каждом запуске.
+     */
+    static boolean isInstallOnce(String path) {
+        int slash = path.indexOf('/');
+        String top = slash < 0 ? path : path.substring(0, slash);
+        if (PLAYER_DATA.contains(top)) return true;
+        return top.equals("mods") && slash >= 0 && !path.toLowerCase().endsWith(".jar");
+    }
+
+    /** Манифест без файлов, которые ставятся один раз: по нему проверяется и чинится установка. */
+    ClientManifest withoutInstallOnce() {
+        Map<String, Entry> owned = new LinkedHashMap<>();
+        entries.forEach((path, entry) -> {
+            if (!isInstallOnce(path)) owned.put(path, entry);
+        });
+        return new ClientManifest(owned);
+    }
+
+    long totalSize() {
+        return entries.values().stream().mapToLong(Entry::size).sum();
+    }
+
+    /**
+     * Сравнивает этот (удаленный) манифест с установленным. Файл считается актуальным,
+     * если локальный манифест знает тот же хэш и размер на диске совпадает; файлы без
+     * записи в локальном манифесте хэшируются. Удаляются только файлы, которые лаунчер
+     * сам ставил раньше, — пользовательские моды и сохранения не трогаются.
+     */
+    Delta diff(ClientManifest installed, Path installDir) throws IOException {
+        Path root = installDir.toAbsolutePath().normalize();
+        List<Entry> toDownload = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            Path file = resolveSafely(root, entry.path());
+            if (!Files.isRegularFile(file) || Files.size(file) != entry.size()) {
+                toDownload.add(entry);
+                continue;
+            }
+            Entry local = installed != null ? installed.get(entry.path()) : null;
+            if (local != null) {
+                if (!local.sha256().equalsIgnoreCase(entry.sha256())) toDownload.add(entry);
+            } else if (!Checksums.sha256(file).equalsIgnoreCase(entry.sha256())) {
+                toDownload.add(entry);
+            }
+        }
+
+        List<String> toDelete = new ArrayList<>();
+        if (installed != null) {
+            for (String path : installed.entries.keySet()) {
+                if (!entries.containsKey(path)) toDelete.add(path);
+            }
+        }
+        return new Delta(toDownload, toDelete);
+    }
+
+    static Path resolveSafely(Path root, String relativePath) throws IOException {
+        Path resolved = root.resolve(relativePath).normalize();
+        if (!resolved.startsWith(root) || resolved.equals(root)) {
+            throw new IOException("Путь из манифеста указывает вне папки клиента: " + relativePath);
+        }
+        return resolved;
+    }
+
+    private static String normalizePath(String path) {
+        String normalized = path.replace('\\', '/');
+        while (normalized.startsWith("./")) normalized = normalized.substring(2);
+        return normalized;
+    }
+}
@@ -0,0 +1,223 @@
+package com.cobuilding;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Перенос папок и файлов клиента в другое место. В пределах одного тома это одно
+ * переименование. Между томами файлы копируются параллельно большими блоками,
+ * каждая копия сбрасывается на диск (force) и сверяется с прочитанным по SHA-256,
+ * и только когда все копии на диске, источник удаляется. Уже перенесенные файлы
+ * (тот же размер и mtime) при повторном запуске пропускаются, так что оборванный
+ * перенос продолжается. Переносить папку в саму себя или во вложенную нельзя.
+ */
+final class DirectoryMigrator {
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final long PROGRESS_STEP_BYTES = 4L * 1024 * 1024;
+    private static final String TEMP_SUFFIX = ".migrating";
+
+    private record CopyJob(Path source, Path target, long size, FileTime modified) {}
+
+    private final int threads;
+    private final TreeDeleter deleter;
+
+    DirectoryMigrator(int threads, TreeDeleter deleter) {
+        this.threads = Math.max(1, threads);
+        this.deleter = deleter;
+    }
+
+    /**
+     * Переносит записи {@code names} из {@code sourceDir} в {@code targetDir}.
+     * listener получает перенесенные и общие байты копирования между томами.
+     */
+    void migrate(Path sourceDir, Path targetDir, Collection<String> names, ProgressListener listener) throws IOException {
+        requireSeparate(sourceDir, targetDir);
+        Files.createDirectories(targetDir);
+        FileStore targetStore = Files.getFileStore(targetDir);
+        List<Path> toCopy = new ArrayList<>();
+        for (String name : names) {
+            Path source = sourceDir.resolve(name);
+            Path target = targetDir.resolve(name);
+            if (!Files.exists(source, LinkOption.NOFOLLOW_LINKS)) continue;
+            if (!Files.exists(target, LinkOption.NOFOLLOW_LINKS) && Files.getFileStore(source).equals(targetStore)) {
+                try {
+                    Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+                    continue;
+                } catch (AtomicMoveNotSupportedException e) {
+                    // Переименование не получилось — копируем, как между томами
+                }
+            }
+            toCopy.add(source);
+        }
+        if (toCopy.isEmpty()) return;
+
+        List<CopyJob> jobs = new ArrayList<>();
+        long totalBytes = 0;
+        for (Path source : toCopy) {
+            Path target = targetDir.resolve(source.getFileName().toString());
+            totalBytes += planCopy(source, target, jobs);
+        }
+        copyAll(jobs, totalBytes, listener);
+
+        // Источник удаляется только после того, как проверены все копии
+        for (Path source : toCopy) {
+            TreeDeleter.Result result = deleter.delete(source, (done, total) -> {});
+            if (!result.failed().isEmpty()) {
+                System.err.println("Перенос завершен, но " + result.failed().size() + " путей в " + source + " не удалось удалить");
+            }
+        }
+    }
+
+    /**
+     * Отказывает, если папки совпадают или одна лежит внутри другой: иначе все файлы
+     * сочтутся уже перенесенными, и удаление источника унесет и копию. Сравниваются
+     * настоящие пути, чтобы не обмануться ссылками и регистром букв.
+     */
+    static void requireSeparate(Path sourceDir, Path targetDir) throws IOException {
+        Path source = realPath(sourceDir);
+        Path target = realPath(targetDir);
+        if (target.startsWith(source) || source.startsWith(target)) {
+            throw new IOException("Нельзя перенести " + source + " в " + target + ": папки совпадают или вложены одна в другую");
+        }
+    }
+
+    /** Настоящий путь ближайшего существующего предка плюс еще не созданный остаток. */
+    private static Path realPath(Path path) throws IOException {
+        Path absolute = path.toAbsolutePath().normalize();
+        Path existing = absolute;
+        while (existing != null && !Files.exists(existing)) {
+            existing = existing.getParent();
+        }
+        if (existing == null) return absolute;
+        return existing.toRealPath().resolve(existing.relativize(absolute).toString());
+    }
+
+    private static long planCopy(Path source, Path target, List<CopyJob> jobs) throws IOException {
+        long bytes = 0;
+        try (Stream<Path> walk = Files.walk(source)) {
+            for (Path path : (Iterable<Path>) walk::iterator) {
+                Path destination = target.resolve(source.relativize(path).toString());
+                BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                if (attrs.isDirectory()) {
+                    Files.createDirectories(destination);
+                } else if (attrs.isSymbolicLink()) {
+                    Files.copy(path, destination, LinkOption.NOFOLLOW_LINKS, StandardCopyOption.REPLACE_EXISTING);
+                } else if (!path.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+                    jobs.add(new CopyJob(path, destination, attrs.size(), attrs.lastModifiedTime()));
+                    bytes += attrs.size();
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private void copyAll(List<CopyJob> jobs, long totalBytes, ProgressListener listener) throws IOException {
+        AtomicLong copied = new AtomicLong();
+        AtomicLong reported = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (CopyJob job : jobs) {
+                futures.add(executor.submit(() -> {
+                    copyDurably(job, bytes -> {
+                        long done = copied.addAndGet(bytes);
+                        long last = reported.get();
+                        if ((done - last >= PROGRESS_STEP_BYTES || done == totalBytes) && reported.compareAndSet(last, done)) {
+                            listener.onProgress(done, totalBytes);
+                        }
+                    });
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) throw io;
+            throw new IOException("Ошибка при переносе файлов", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Перенос прерван");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private interface ByteCounter {
+        void add(long bytes);
+    }
+
+    /**
+     * Хэш прочитанного из источника сверяется с хэшем записанной копии до переименования:
+     * это ловит недописанные и испорченные по пути копии. Копия при этом читается из page
+     * cache, так что от сбоя самого диска защищает force, а от изменения источника во
+     * время переноса — сверка размера с тем, что был при обходе.
+     */
+    private static void copyDurably(CopyJob job, ByteCounter counter) throws IOException {
+        if (alreadyCopied(job)) {
+            counter.add(job.size());
+            return;
+        }
+        Path temp = job.target().resolveSibling(job.target().getFileName() + TEMP_SUFFIX);
+        try {
+            long copied = 0;
+            byte[] buffer = new byte[BUFFER_SIZE];
+            MessageDigest md = Checksums.newSha256();
+            try (InputStream in = Files.newInputStream(job.source());
+                 FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                         StandardOpenOption.TRUNCATE_EXISTING)) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    md.update(buffer, 0, read);
+                    ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+                    while (chunk.hasRemaining()) {
+                        out.write(chunk);
+                    }
+                    copied += read;
+                    counter.add(read);
+                }
+                out.force(true);
+            }
+            if (copied != job.size() || Files.size(temp) != job.size()) {
+                throw new IOException("Копия " + job.target() + " не совпала с оригиналом: файл изменился во время переноса");
+            }
+            if (!Checksums.toHex(md.digest()).equals(Checksums.sha256(temp))) {
+                throw new IOException("Копия " + job.target() + " не совпала с оригиналом по SHA-256");
+            }
+            Files.setLastModifiedTime(temp, job.modified());
+            Files.move(temp, job.target(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static boolean alreadyCopied(CopyJob job) throws IOException {
+        if (!Files.isRegularFile(job.target(), LinkOption.NOFOLLOW_LINKS)) return false;
+        BasicFileAttributes attrs = Files.readAttributes(job.target(), BasicFileAttributes.class);
+        return attrs.size() == job.size() && attrs.lastModifiedTime().toMillis() == job.modified().toMillis();
+    }
+}
@@ -0,0 +1,346 @@
+package com.cobuilding;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Наблюдает за запущенной игрой. Ее stdout и stderr, слитые в один поток, вычитываются
+ * одним потоком через NIO в {@code logs/game-output.log}; когда файл вырастает больше
+ * лимита, он сдвигается в {@code .1}. Последние строки держатся в памяти для отчета о падении.
+ * <p>
+ * Раз в несколько секунд через {@link ProcessHandle} снимаются ЦП, время работы и, где
+ * ОС это позволяет дешево, RSS. Занятость кучи берется из журнала GC, который игра пишет
+ * в тот же stdout: по нему видно, мало игре {@code -Xmx} или много.
+ */
+final class GameSupervisor {
+
+    static final String LOG_FILE_NAME = "game-output.log";
+
+    /** Журнал GC в stdout и UTF-8 в выводе, чтобы строки игры читались одинаково на всех ОС. */
+    static final List<String> JVM_ARGUMENTS = List.of(
+            "-Xlog:gc,gc+init:stdout", "-Dstdout.encoding=UTF-8", "-Dstderr.encoding=UTF-8");
+
+    private static final String CRASH_REPORT_PREFIX = "launcher-crash-";
+    private static final int MAX_CRASH_REPORTS = 10;
+    private static final int TAIL_LINES = 300;
+    private static final int MAX_LINE_BYTES = 2048;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Полные сборки и остановки на выделении при загрузке мира бывают и при достаточной куче
+    private static final Duration WARMUP = Duration.ofMinutes(1);
+    private static final int PRESSURE_EVENTS_LIMIT = 3;
+    private static final int HIGH_USAGE_PERCENT = 85;
+    private static final int LOW_USAGE_PERCENT = 30;
+    private static final Duration LOW_USAGE_MIN_UPTIME = Duration.ofMinutes(10);
+    private static final Pattern GC_LINE = Pattern.compile(
+            "\\]\\[gc\\s*\\] GC\\(\\d+\\) (.+?) (\\d+)M(?:\\(\\d+%\\))?->(\\d+)M");
+    private static final Pattern MAX_CAPACITY = Pattern.compile("\\]\\[gc,init\\] (?:Heap )?Max Capacity: (\\d+)([KMG])");
+    private static final Pattern VM_RSS = Pattern.compile("VmRSS:\\s+(\\d+) kB");
+
+    /**
+     * @param rssMb          -1, если ОС не дает узнать его без запуска внешних программ
+     * @param heapAfterGcMb  -1 до первой сборки мусора
+     * @param heapMaxMb      -1, если JVM не сообщила лимит кучи
+     * @param memoryAdvice   null, пока с памятью все в порядке
+     */
+    record Sample(Duration uptime, double cpuPercent, long rssMb, long heapAfterGcMb, long heapMaxMb, String memoryAdvice) {
+
+        String describe() {
+            StringBuilder sb = new StringBuilder(String.format(Locale.ROOT, "ЦП %.0f%%", cpuPercent));
+            if (rssMb >= 0) sb.append(" · RSS ").append(rssMb).append(" МБ");
+            if (heapAfterGcMb >= 0 && heapMaxMb > 0) {
+                sb.append(" · куча ").append(heapAfterGcMb).append(" из ").append(heapMaxMb).append(" МБ");
+            }
+            long seconds = uptime.toSeconds();
+            sb.append(String.format(Locale.ROOT, " · %d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60));
+            return sb.toString();
+        }
+    }
+
+    interface Listener {
+        void onSample(Sample sample);
+
+        /** @param crashReport отчет о падении или null, если игра закрылась штатно */
+        void onExit(int exitCode, Path crashReport);
+    }
+
+    private final Process process;
+    private final Path logsDir;
+    private final long maxLogBytes;
+    private final Listener listener;
+    private final long startNanos = System.nanoTime();
+    private final int cores = Runtime.getRuntime().availableProcessors();
+    private final ArrayDeque<String> tail = new ArrayDeque<>();
+    private final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "game-monitor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Thread drainer;
+    // Отпускается первой строкой самой игры или ее выходом
+    private final CountDownLatch firstGameLine = new CountDownLatch(1);
+    private volatile boolean gameOutputSeen;
+
+    // Пишет поток вывода, читает поток замеров
+    private volatile long heapMaxMb = -1;
+    private volatile long heapAfterGcMb = -1;
+    private volatile long peakHeapAfterGcMb = -1;
+    private volatile int pressureEvents;
+
+    // Принадлежит потоку вывода: он сдвигает журнал и закрывает его после конца вывода
+    private FileChannel log;
+    private long cpuNanos;
+    private long sampledAtNanos = startNanos;
+    private volatile Sample lastSample;
+
+    private GameSupervisor(Process process, Path logsDir, long maxLogBytes, Listener listener) {
+        this.process = process;
+        this.logsDir = logsDir;
+        this.maxLogBytes = maxLogBytes;
+        this.listener = listener;
+        this.drainer = new Thread(this::drain, "game-output");
+        drainer.setDaemon(true);
+    }
+
+    /**
+     * Начинает наблюдение. Вывод игры должен идти в {@link ProcessBuilder.Redirect#PIPE}
+     * с {@code redirectErrorStream(true)}.
+     */
+    static GameSupervisor start(Process process, Path logsDir, long maxLogBytes, Duration sampleInterval, Listener listener)
+            throws IOException {
+        Files.createDirectories(logsDir);
+        GameSupervisor supervisor = new GameSupervisor(process, logsDir, maxLogBytes, listener);
+        supervisor.log = openLog(logsDir.resolve(LOG_FILE_NAME), maxLogBytes);
+        supervisor.drainer.start();
+        long intervalMillis = Math.max(500, sampleInterval.toMillis());
+        supervisor.sampler.scheduleAtFixedRate(supervisor::sample, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        process.onExit().thenAccept(exited -> supervisor.finish());
+        return supervisor;
+    }
+
+    /** Сдвигает разросшийся журнал в {@code .1}: так же его готовит запуск из командной строки. */
+    static void rotateIfLarge(Path logFile, long maxBytes) throws IOException {
+        if (Files.exists(logFile) && Files.size(logFile) > maxBytes) {
+            Files.move(logFile, logFile.resolveSibling(logFile.getFileName() + ".1"), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    long pid() {
+        return process.pid();
+    }
+
+    /**
+     * Ждет первую строку, которую напечатала сама игра. Строки журнала GC не в счет:
+     * их JVM пишет еще до того, как игра начала выполняться.
+     *
+     * @return false, если игра вышла или ничего не напечатала за timeout
+     */
+    boolean awaitGameOutput(Duration timeout) throws InterruptedException {
+        return firstGameLine.await(timeout.toMillis(), TimeUnit.MILLISECONDS) && gameOutputSeen;
+    }
+
+    private static FileChannel openLog(Path logFile, long maxBytes) throws IOException {
+        rotateIfLarge(logFile, maxBytes);
+        return FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void drain() {
+        byte[] line = new byte[MAX_LINE_BYTES];
+        int lineLength = 0;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        try (InputStream output = process.getInputStream(); ReadableByteChannel channel = Channels.newChannel(output)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                int limit = buffer.limit();
+                for (int i = 0; i < limit; i++) {
+                    byte b = buffer.get(i);
+                    if (b == '\n') {
+                        onLine(new String(line, 0, lineLength, StandardCharsets.UTF_8).stripTrailing());
+                        lineLength = 0;
+                    } else if (lineLength < line.length) {
+                        // Хвост слишком длинной строки в памяти не нужен, в файл она попадет целиком
+                        line[lineLength++] = b;
+                    }
+                }
+                writeLog(buffer);
+                buffer.clear();
+            }
+            if (lineLength > 0) onLine(new String(line, 0, lineLength, StandardCharsets.UTF_8).stripTrailing());
+        } catch (IOException e) {
+            System.err.println("Вывод игры больше не читается: " + e.getMessage());
+        } finally {
+            try {
+                log.close();
+            } catch (IOException e) {
+                System.err.println("Не удалось закрыть журнал игры: " + e.getMessage());
+            }
+        }
+    }
+
+    private void writeLog(ByteBuffer buffer) throws IOException {
+        if (log.size() > 0 && log.size() + buffer.remaining() > maxLogBytes) {
+            log.close();
+            log = openLog(logsDir.resolve(LOG_FILE_NAME), 0);
+        }
+        while (buffer.hasRemaining()) log.write(buffer);
+    }
+
+    private void onLine(String line) {
+        synchronized (tail) {
+            if (tail.size() == TAIL_LINES) tail.removeFirst();
+            tail.addLast(line);
+        }
+        if (!line.contains("][gc")) {
+            if (!gameOutputSeen) {
+                gameOutputSeen = true;
+                firstGameLine.countDown();
+            }
+            return;
+        }
+
+        Matcher gc = GC_LINE.matcher(line);
+        if (gc.find()) {
+            long after = Long.parseLong(gc.group(3));
+            heapAfterGcMb = after;
+            peakHeapAfterGcMb = Math.max(peakHeapAfterGcMb, after);
+            if (gc.group(1).startsWith("Pause Full") && pastWarmup()) pressureEvents++;
+            return;
+        }
+        if (line.contains("Allocation Stall") && pastWarmup()) {
+            pressureEvents++;
+            return;
+        }
+        Matcher max = MAX_CAPACITY.matcher(line);
+        if (max.find()) {
+            long value = Long.parseLong(max.group(1));
+            heapMaxMb = switch (max.group(2)) {
+                case "G" -> value * 1024;
+                case "K" -> value / 1024;
+                default -> value;
+            };
+        }
+    }
+
+    private boolean pastWarmup() {
+        return System.nanoTime() - startNanos > WARMUP.toNanos();
+    }
+
+    private void sample() {
+        try {
+            long now = System.nanoTime();
+            long cpu = process.toHandle().info().totalCpuDuration().map(Duration::toNanos).orElse(-1L);
+            double cpuPercent = 0;
+            if (cpu >= 0 && now > sampledAtNanos) {
+                cpuPercent = Math.max(0, (cpu - cpuNanos) * 100.0 / (now - sampledAtNanos) / cores);
+                cpuNanos = cpu;
+            }
+            sampledAtNanos = now;
+            Duration uptime = Duration.ofNanos(now - startNanos);
+            Sample sample = new Sample(uptime, cpuPercent, rssMb(process.pid()), heapAfterGcMb, heapMaxMb, memoryAdvice(uptime));
+            lastSample = sample;
+            listener.onSample(sample);
+        } catch (RuntimeException e) {
+            // Исключение отменило бы все следующие замеры
+            System.err.println("Не удалось снять показатели игры: " + e.getMessage());
+        }
+    }
+
+    private String memoryAdvice(Duration uptime) {
+        long max = heapMaxMb;
+        long current = heapAfterGcMb;
+        if (max <= 0 || current < 0) return null;
+        if (pressureEvents >= PRESSURE_EVENTS_LIMIT || current * 100 > max * HIGH_USAGE_PERCENT) {
+            return "Игре не хватает памяти: после сборки мусора занято " + current + " из " + max
+                    + " МБ. Увеличьте объем в настройках";
+        }
+        long peak = peakHeapAfterGcMb;
+        // Маленький запас в 2 ГБ урезать не советуем, на нем разница не окупается
+        if (uptime.compareTo(LOW_USAGE_MIN_UPTIME) >= 0 && peak * 100 < max * LOW_USAGE_PERCENT && max > 3 * 1024) {
+            long suggestedGb = Math.max(2, (peak * 5 / 2 + 1023) / 1024);
+            if (suggestedGb * 1024 < max) {
+                return "Памяти выделено с избытком: пик после сборки мусора " + peak + " МБ, хватит " + suggestedGb + " ГБ";
+            }
+        }
+        return null;
+    }
+
+    /** RSS из {@code /proc}; на Windows и macOS для него пришлось бы запускать внешнюю программу. */
+    private static long rssMb(long pid) {
+        Path status = Path.of("/proc", Long.toString(pid), "status");
+        if (!Files.isReadable(status)) return -1;
+        try {
+            Matcher matcher = VM_RSS.matcher(Files.readString(status));
+            return matcher.find() ? Long.parseLong(matcher.group(1)) / 1024 : -1;
+        } catch (IOException | RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private void finish() {
+        firstGameLine.countDown();
+        sampler.shutdownNow();
+        try {
+            // Поток вывода дочитывает то, что игра успела напечатать перед выходом, и сам закрывает журнал
+            drainer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int exitCode = process.exitValue();
+        Path crashReport = exitCode != 0 ? writeCrashReport(exitCode) : null;
+        listener.onExit(exitCode, crashReport);
+    }
+
+    private Path writeCrashReport(int exitCode) {
+        Path report = logsDir.resolve(CRASH_REPORT_PREFIX
+                + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".txt");
+        StringBuilder sb = new StringBuilder();
+        sb.append("Код выхода: ").append(exitCode).append('\n');
+        sb.append("Время работы: ").append(Duration.ofNanos(System.nanoTime() - startNanos).toSeconds()).append(" с\n");
+        Sample sample = lastSample;
+        if (sample != null) sb.append("Последний замер: ").append(sample.describe()).append('\n');
+        if (peakHeapAfterGcMb >= 0) sb.append("Пик кучи после сборки: ").append(peakHeapAfterGcMb).append(" МБ\n");
+        if (sample != null && sample.memoryAdvice() != null) sb.append(sample.memoryAdvice()).append('\n');
+        sb.append("\nПоследние строки вывода:\n");
+        synchronized (tail) {
+            for (String line : tail) sb.append(line).append('\n');
+        }
+        try {
+            Files.writeString(report, sb.toString());
+            pruneCrashReports();
+            return report;
+        } catch (IOException e) {
+            System.err.println("Не удалось записать отчет о падении игры: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void pruneCrashReports() throws IOException {
+        try (Stream<Path> stream = Files.list(logsDir)) {
+            List<Path> reports = stream.filter(p -> p.getFileName().toString().startsWith(CRASH_REPORT_PREFIX)).sorted().toList();
+            for (Path old : reports.subList(0, Math.max(0, reports.size() - MAX_CRASH_REPORTS))) {
+                Files.deleteIfExists(old);
+            }
+        }
+    }
+}
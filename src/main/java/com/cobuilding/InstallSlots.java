@@ -0,0 +1,442 @@
+package com.cobuilding;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Слоты установки в {@code slots/} рядом с клиентом. В {@code staged} заранее, в фоне,
+ * готовится следующая версия, а при запуске она ставится на место переименованиями
+ * вместо распаковки. Все, что при этом заменяется, уезжает в {@code previous}, так
+ * что откат — такое же переключение в обратную сторону.
+ * <p>
+ * Слот бывает полным (все файлы клиента) или частичным: только изменившиеся файлы
+ * плюс список удаленных, и тогда он применим лишь к той версии, от которой собран.
+ * <p>
+ * Переключение — это много переименований, поэтому перед первым из них весь план
+ * пишется в журнал {@code slots/switch.journal}. Оборванное переключение при следующем
+ * старте откатывается по журналу в обратном порядке, а завершенное, но не отмеченное
+ * в {@code current_version.txt}, доводится до конца через {@link #recoverSwitch}.
+ */
+final class InstallSlots {
+
+    static final String DIRECTORY_NAME = "slots";
+
+    private static final String STAGING = "staging";
+    private static final String STAGED = "staged";
+    private static final String PREVIOUS = "previous";
+    private static final String ROLLBACK = "rollback";
+    private static final String FILES = "files";
+    private static final String INFO_FILE = "slot.properties";
+    private static final String DELETED_FILE = "deleted.txt";
+    private static final String MANIFEST_FILE = "manifest.txt";
+    private static final String ARCHIVE_FILE = "client.zip";
+    private static final String JOURNAL_FILE = "switch.journal";
+    private static final String JOURNAL_BEGIN = "begin";
+    private static final String JOURNAL_MOVE = "move";
+    private static final String JOURNAL_DONE = "done";
+
+    /** @param fileCount число файлов в {@code files} на момент сборки; -1 у слотов без этой записи */
+    record Slot(Path dir, String version, String baseVersion, boolean full, String archiveSha256, List<String> deleted,
+                long fileCount, long totalBytes) {
+        boolean appliesTo(String targetVersion, String liveVersion) {
+            return version.equalsIgnoreCase(targetVersion) && (full || baseVersion.equals(liveVersion)) && complete();
+        }
+
+        /** Файлы слота на месте: оборванное переключение или чужие руки могли унести часть из них. */
+        boolean complete() {
+            if (fileCount < 0) return false;
+            try {
+                long[] totals = countFiles(files());
+                return totals[0] == fileCount && totals[1] == totalBytes;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        Path files() {
+            return dir.resolve(FILES);
+        }
+
+        Path manifest() {
+            return dir.resolve(MANIFEST_FILE);
+        }
+
+        /** Проверенный архив версии, из которого собран полный слот; может отсутствовать. */
+        Path archive() {
+            return dir.resolve(ARCHIVE_FILE);
+        }
+    }
+
+    private final Path gameDir;
+    private final Path slotsDir;
+    private final Set<String> preserved;
+    private final TreeDeleter deleter;
+
+    /** @param preserved записи верхнего уровня, которые не принадлежат клиенту и не переключаются */
+    InstallSlots(Path gameDir, Set<String> preserved, TreeDeleter deleter) {
+        this.gameDir = gameDir;
+        this.slotsDir = gameDir.resolve(DIRECTORY_NAME);
+        this.preserved = preserved;
+        this.deleter = deleter;
+    }
+
+    Slot staged() {
+        return readSlot(slotsDir.resolve(STAGED));
+    }
+
+    Slot previous() {
+        return readSlot(slotsDir.resolve(PREVIOUS));
+    }
+
+    /** Начинает сборку нового слота с чистого листа; недособранный прошлый раз выбрасывается. */
+    Path beginStaging() throws IOException {
+        Path staging = slotsDir.resolve(STAGING);
+        deleter.discard(staging);
+        Files.createDirectories(staging.resolve(FILES));
+        return staging;
+    }
+
+    static Path filesOf(Path staging) {
+        return staging.resolve(FILES);
+    }
+
+    static Path manifestOf(Path staging) {
+        return staging.resolve(MANIFEST_FILE);
+    }
+
+    static Path archiveOf(Path staging) {
+        return staging.resolve(ARCHIVE_FILE);
+    }
+
+    /** Делает собранный слот готовым к переключению одним переименованием. */
+    Slot commitStaging(String version, String baseVersion, boolean full, String archiveSha256, List<String> deleted) throws IOException {
+        requireNoSwitch();
+        Path staging = slotsDir.resolve(STAGING);
+        Files.write(staging.resolve(DELETED_FILE), deleted);
+        writeInfo(staging, version, baseVersion, full, archiveSha256);
+        Path staged = slotsDir.resolve(STAGED);
+        deleter.discard(staged);
+        Files.move(staging, staged, StandardCopyOption.ATOMIC_MOVE);
+        return readSlot(staged);
+    }
+
+    void discard(Slot slot) throws IOException {
+        requireNoSwitch();
+        if (slot != null) deleter.discard(slot.dir());
+    }
+
+    /**
+     * Ставит файлы слота на место переименованиями, а заменяемое переносит в
+     * {@code previous}. Сам слот после этого пуст, кроме архива. Переключение считается
+     * законченным только после {@link #finishSwitch}: до него вызывающий должен записать
+     * новую версию, а слот и {@code previous} не трогаются.
+     *
+     * @return относительные пути установленных файлов
+     */
+    List<String> switchTo(Slot slot, String liveVersion) throws IOException {
+        requireNoSwitch();
+        Path previous = slotsDir.resolve(PREVIOUS);
+        deleter.discard(previous);
+        Path previousFiles = previous.resolve(FILES);
+        Files.createDirectories(previousFiles);
+
+        List<String> installed = listFiles(slot.files());
+        List<String> added = new ArrayList<>();
+        List<Path[]> moves = planMoves(slot, installed, previousFiles, added);
+        Path liveManifest = gameDir.resolve(MANIFEST_FILE);
+        if (Files.exists(liveManifest)) moves.add(new Path[]{liveManifest, previous.resolve(MANIFEST_FILE)});
+        if (Files.exists(slot.manifest())) moves.add(new Path[]{slot.manifest(), liveManifest});
+
+        List<String> journal = new ArrayList<>();
+        journal.add(JOURNAL_BEGIN + "\t" + slot.version() + "\t" + slot.dir().getFileName());
+        for (Path[] move : moves) {
+            journal.add(JOURNAL_MOVE + "\t" + relative(move[0]) + "\t" + relative(move[1]));
+        }
+        writeDurably(slotsDir.resolve(JOURNAL_FILE), journal);
+
+        try {
+            for (Path[] move : moves) {
+                Files.createDirectories(move[1].getParent());
+                Files.move(move[0], move[1]);
+            }
+            Files.write(previous.resolve(DELETED_FILE), added);
+            writeInfo(previous, liveVersion, slot.version(), slot.full(), null);
+            appendDurably(slotsDir.resolve(JOURNAL_FILE), JOURNAL_DONE);
+        } catch (IOException e) {
+            try {
+                undo(moves);
+                Files.delete(slotsDir.resolve(JOURNAL_FILE));
+            } catch (IOException undoFailure) {
+                // Журнал остается: откат повторится при следующем старте
+                e.addSuppressed(undoFailure);
+            }
+            throw e;
+        }
+        return installed;
+    }
+
+    /**
+     * Отмечает переключение законченным, когда новая версия уже записана. После отката
+     * заодно выбрасываются слот отката и {@code previous} с поврежденными файлами.
+     */
+    void finishSwitch() throws IOException {
+        Path journal = slotsDir.resolve(JOURNAL_FILE);
+        if (!Files.exists(journal)) return;
+        boolean rollback = Files.readAllLines(journal).get(0).endsWith("\t" + ROLLBACK);
+        Files.delete(journal);
+        if (rollback) {
+            deleter.discard(slotsDir.resolve(ROLLBACK));
+            deleter.discard(slotsDir.resolve(PREVIOUS));
+        }
+    }
+
+    /**
+     * Разбирает переключение, прерванное падением или выключением компьютера.
+     *
+     * @return версия, на которую переключение успело пройти полностью: ее осталось
+     *         записать и вызвать {@link #finishSwitch}; null, если переключение откачено
+     *         или его не было
+     */
+    String recoverSwitch() throws IOException {
+        Path journalFile = slotsDir.resolve(JOURNAL_FILE);
+        Path rollbackDir = slotsDir.resolve(ROLLBACK);
+        if (!Files.exists(journalFile)) {
+            // Упали между переносом previous в rollback и записью журнала
+            if (Files.isDirectory(rollbackDir) && !Files.exists(slotsDir.resolve(PREVIOUS))) {
+                Files.move(rollbackDir, slotsDir.resolve(PREVIOUS), StandardCopyOption.ATOMIC_MOVE);
+            }
+            return null;
+        }
+        List<String> journal = Files.readAllLines(journalFile);
+        String[] begin = journal.isEmpty() ? new String[0] : journal.get(0).split("\t");
+        if (begin.length == 3 && begin[0].equals(JOURNAL_BEGIN) && journal.get(journal.size() - 1).equals(JOURNAL_DONE)) {
+            return begin[1];
+        }
+
+        System.out.println("Откатываем прерванное переключение версии клиента...");
+        Path root = gameDir.toAbsolutePath().normalize();
+        List<Path[]> moves = new ArrayList<>();
+        for (String line : journal) {
+            String[] parts = line.split("\t");
+            if (parts.length == 3 && parts[0].equals(JOURNAL_MOVE)) {
+                moves.add(new Path[]{ClientManifest.resolveSafely(root, parts[1]), ClientManifest.resolveSafely(root, parts[2])});
+            }
+        }
+        undo(moves);
+        Files.delete(journalFile);
+        // Оборванный откат: слот отката снова становится previous
+        if (begin.length == 3 && begin[2].equals(ROLLBACK) && Files.isDirectory(rollbackDir)) {
+            deleter.discard(slotsDir.resolve(PREVIOUS));
+            Files.move(rollbackDir, slotsDir.resolve(PREVIOUS), StandardCopyOption.ATOMIC_MOVE);
+        }
+        return null;
+    }
+
+    /**
+     * Возвращает на место содержимое {@code previous}. Текущие файлы при этом
+     * выбрасываются: откат делается, когда они повреждены. Как и после {@link #switchTo},
+     * вызывающий записывает восстановленную версию и вызывает {@link #finishSwitch}.
+     *
+     * @return восстановленная версия или null, если откатываться не на что
+     */
+    String rollback(String liveVersion) throws IOException {
+        requireNoSwitch();
+        Slot previous = previous();
+        if (previous == null || !previous.appliesTo(previous.version(), liveVersion)) return null;
+        Path rollbackDir = slotsDir.resolve(ROLLBACK);
+        deleter.discard(rollbackDir);
+        Files.move(previous.dir(), rollbackDir, StandardCopyOption.ATOMIC_MOVE);
+        Slot slot = readSlot(rollbackDir);
+        if (slot == null) return null;
+        switchTo(slot, liveVersion);
+        return slot.version();
+    }
+
+    /**
+     * Все переименования переключения заранее, без замены существующих файлов: тогда
+     * каждое из них обратимо, и журнал однозначно откатывается в любой точке.
+     *
+     * @param added сюда попадают пути, которых до переключения не было: откат на
+     *              {@code previous} их уберет, в том числе из пользовательских папок
+     */
+    private List<Path[]> planMoves(Slot slot, List<String> installed, Path previousFiles, List<String> added) throws IOException {
+        Path root = gameDir.toAbsolutePath().normalize();
+        List<Path[]> moves = new ArrayList<>();
+        if (slot.full()) {
+            // Целые папки клиента переезжают одним rename, а не пофайлово
+            try (Stream<Path> stream = Files.list(gameDir)) {
+                for (Path live : stream.filter(p -> !preserved.contains(p.getFileName().toString())).toList()) {
+                    moves.add(new Path[]{live, previousFiles.resolve(live.getFileName().toString())});
+                }
+            }
+            try (Stream<Path> stream = Files.list(slot.files())) {
+                for (Path source : stream.toList()) {
+                    String name = source.getFileName().toString();
+                    Path target = gameDir.resolve(name);
+                    if (!preserved.contains(name)) {
+                        if (!Files.exists(target)) added.add(name);
+                        moves.add(new Path[]{source, target});
+                    } else if (!Files.exists(target)) {
+                        // Пользовательская папка, которой еще не было: при откате уберутся только файлы клиента
+                        if (Files.isDirectory(source)) {
+                            listFiles(source).forEach(relative -> added.add(name + "/" + relative));
+                        } else {
+                            added.add(name);
+                        }
+                        moves.add(new Path[]{source, target});
+                    } else if (Files.isDirectory(source) && Files.isDirectory(target)) {
+                        // Записи с именами пользовательских папок остаются на месте, в них вливаются файлы
+                        for (String relative : listFiles(source)) {
+                            Path live = target.resolve(relative);
+                            if (Files.exists(live)) {
+                                moves.add(new Path[]{live, previousFiles.resolve(name).resolve(relative)});
+                            } else {
+                                added.add(name + "/" + relative);
+                            }
+                            moves.add(new Path[]{source.resolve(relative), live});
+                        }
+                    } else {
+                        moves.add(new Path[]{target, previousFiles.resolve(name)});
+                        moves.add(new Path[]{source, target});
+                    }
+                }
+            }
+            // Файлы, добавленные прошлым переключением в пользовательские папки; остальное уже уехало целиком
+            Set<String> replaced = new HashSet<>(installed);
+            for (String relative : slot.deleted()) {
+                String top = relative.contains("/") ? relative.substring(0, relative.indexOf('/')) : relative;
+                if (!preserved.contains(top) || replaced.contains(relative)) continue;
+                Path target = ClientManifest.resolveSafely(root, relative);
+                if (Files.exists(target)) {
+                    moves.add(new Path[]{target, ClientManifest.resolveSafely(previousFiles, relative)});
+                }
+            }
+        } else {
+            for (String relative : installed) {
+                Path target = ClientManifest.resolveSafely(root, relative);
+                if (Files.exists(target)) {
+                    moves.add(new Path[]{target, ClientManifest.resolveSafely(previousFiles, relative)});
+                } else {
+                    added.add(relative);
+                }
+                moves.add(new Path[]{ClientManifest.resolveSafely(slot.files(), relative), target});
+            }
+            for (String relative : slot.deleted()) {
+                Path target = ClientManifest.resolveSafely(root, relative);
+                if (Files.exists(target)) {
+                    moves.add(new Path[]{target, ClientManifest.resolveSafely(previousFiles, relative)});
+                }
+            }
+        }
+        return moves;
+    }
+
+    /** Возвращает сделанные переименования в обратном порядке; несделанные пропускаются. */
+    private static void undo(List<Path[]> moves) throws IOException {
+        for (int i = moves.size() - 1; i >= 0; i--) {
+            Path source = moves.get(i)[0];
+            Path target = moves.get(i)[1];
+            if (Files.exists(target, LinkOption.NOFOLLOW_LINKS) && !Files.exists(source, LinkOption.NOFOLLOW_LINKS)) {
+                Files.createDirectories(source.getParent());
+                Files.move(target, source);
+            }
+        }
+    }
+
+    private void requireNoSwitch() throws IOException {
+        if (Files.exists(slotsDir.resolve(JOURNAL_FILE))) {
+            throw new IOException("Прошлое переключение версии не завершено, слоты трогать нельзя");
+        }
+    }
+
+    private String relative(Path path) {
+        return gameDir.toAbsolutePath().normalize().relativize(path.toAbsolutePath().normalize()).toString().replace('\\', '/');
+    }
+
+    private static void writeDurably(Path file, List<String> lines) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap((String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8)));
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void appendDurably(Path file, String line) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8)));
+            channel.force(true);
+        }
+    }
+
+    private static Slot readSlot(Path dir) {
+        Path info = dir.resolve(INFO_FILE);
+        if (!Files.isDirectory(dir.resolve(FILES)) || !Files.exists(info)) return null;
+        Properties props = new Properties();
+        try (Reader reader = Files.newBufferedReader(info)) {
+            props.load(reader);
+            String version = props.getProperty("version");
+            if (version == null || version.isEmpty()) return null;
+            Path deletedFile = dir.resolve(DELETED_FILE);
+            List<String> deleted = Files.exists(deletedFile)
+                    ? Files.readAllLines(deletedFile).stream().filter(line -> !line.isBlank()).toList()
+                    : List.of();
+            return new Slot(dir, version, props.getProperty("baseVersion", ""),
+                    Boolean.parseBoolean(props.getProperty("full")), props.getProperty("archiveSha256"), deleted,
+                    Long.parseLong(props.getProperty("fileCount", "-1")), Long.parseLong(props.getProperty("totalBytes", "-1")));
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Слот " + dir.getFileName() + " поврежден и будет пропущен: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void writeInfo(Path dir, String version, String baseVersion, boolean full, String archiveSha256) throws IOException {
+        Properties props = new Properties();
+        props.setProperty("version", version);
+        props.setProperty("baseVersion", baseVersion == null ? "" : baseVersion);
+        props.setProperty("full", String.valueOf(full));
+        if (archiveSha256 != null) props.setProperty("archiveSha256", archiveSha256);
+        long[] totals = countFiles(dir.resolve(FILES));
+        props.setProperty("fileCount", String.valueOf(totals[0]));
+        props.setProperty("totalBytes", String.valueOf(totals[1]));
+        try (Writer writer = Files.newBufferedWriter(dir.resolve(INFO_FILE))) {
+            props.store(writer, null);
+        }
+    }
+
+    private static List<String> listFiles(Path filesDir) throws IOException {
+        try (Stream<Path> stream = Files.walk(filesDir)) {
+            return stream.filter(Files::isRegularFile)
+                    .map(path -> filesDir.relativize(path).toString().replace('\\', '/'))
+                    .toList();
+        }
+    }
+
+    /** @return число файлов и их общий размер */
+    private static long[] countFiles(Path filesDir) throws IOException {
+        long[] totals = new long[2];
+        try (Stream<Path> stream = Files.walk(filesDir)) {
+            for (Path file : stream.filter(Files::isRegularFile).toList()) {
+                totals[0]++;
+                totals[1] += Files.size(file);
+            }
+        }
+        return totals;
+    }
+}
@@ -0,0 +1,161 @@
+package com.cobuilding;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Сохраненное состояние файлов клиента: путь → размер, mtime и SHA-256.
+ * Проверка сверяет файлы с манифестом и перехэширует только те, у которых
+ * размер или mtime изменились с прошлой проверки.
+ * Формат строки: {@code <sha256> <size> <mtimeMillis> <path>}.
+ */
+final class IntegrityIndex {
+
+    private record Entry(long size, long mtime, String sha256) {}
+
+    private static final int BATCH_FILES = 64;
+
+    private final Path indexFile;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private IntegrityIndex(Path indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    static IntegrityIndex load(Path indexFile) {
+        IntegrityIndex index = new IntegrityIndex(indexFile);
+        if (!Files.exists(indexFile)) return index;
+        try {
+            for (String line : Files.readAllLines(indexFile)) {
+                String[] parts = line.split(" ", 4);
+                if (parts.length < 4) continue;
+                index.entries.put(parts[3], new Entry(Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[0]));
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Индекс — только кэш, без него все просто перехэшируется
+            System.err.println("Индекс целостности поврежден, будет построен заново: " + e.getMessage());
+            index.entries.clear();
+        }
+        return index;
+    }
+
+    void save() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            Entry entry = e.getValue();
+            sb.append(entry.sha256()).append(' ').append(entry.size()).append(' ')
+                    .append(entry.mtime()).append(' ').append(e.getKey()).append('\n');
+        }
+        Files.createDirectories(indexFile.getParent());
+        Path tmp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        Files.writeString(tmp, sb.toString());
+        Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Запоминает файлы, только что поставленные из проверенного источника (архив с
+     * совпавшим хэшем или пофайловое обновление), с хэшами из манифеста — без чтения.
+     */
+    void trust(Collection<ClientManifest.Entry> installed, Path installDir) throws IOException {
+        Path root = installDir.toAbsolutePath().normalize();
+        for (ClientManifest.Entry expected : installed) {
+            Path file = ClientManifest.resolveSafely(root, expected.path());
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                if (attrs.size() == expected.size()) {
+                    entries.put(expected.path(), new Entry(attrs.size(), attrs.lastModifiedTime().toMillis(), expected.sha256()));
+                }
+            } catch (NoSuchFileException ignored) {
+                // Отсутствующий файл найдет следующая проверка
+            }
+        }
+    }
+
+    /**
+     * @param deep перехэшировать все файлы, не доверяя сохраненному состоянию
+     * @return относительные пути отсутствующих или поврежденных файлов
+     */
+    List<String> verify(ClientManifest manifest, Path installDir, boolean deep, int threads,
+                        ProgressListener listener) throws IOException {
+        Path root = installDir.toAbsolutePath().normalize();
+        List<ClientManifest.Entry> expected = new ArrayList<>(manifest.entries());
+        List<String> damaged = Collections.synchronizedList(new ArrayList<>());
+        AtomicLong checked = new AtomicLong();
+        Set<String> expectedPaths = expected.stream().map(ClientManifest.Entry::path).collect(Collectors.toSet());
+        entries.keySet().retainAll(expectedPaths);
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int from = 0; from < expected.size(); from += BATCH_FILES) {
+                List<ClientManifest.Entry> batch = expected.subList(from, Math.min(expected.size(), from + BATCH_FILES));
+                futures.add(executor.submit(() -> {
+                    for (ClientManifest.Entry entry : batch) {
+                        if (!checkFile(root, entry, deep)) damaged.add(entry.path());
+                        listener.onProgress(checked.incrementAndGet(), expected.size());
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) throw io;
+            throw new IOException("Ошибка при проверке файлов клиента", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Проверка файлов прервана");
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Collections.sort(damaged);
+        return damaged;
+    }
+
+    private boolean checkFile(Path root, ClientManifest.Entry expected, boolean deep) throws IOException {
+        Path file = ClientManifest.resolveSafely(root, expected.path());
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            entries.remove(expected.path());
+            return false;
+        }
+        if (!attrs.isRegularFile() || attrs.size() != expected.size()) {
+            entries.remove(expected.path());
+            return false;
+        }
+
+        long mtime = attrs.lastModifiedTime().toMillis();
+        Entry cached = entries.get(expected.path());
+        String actualHash;
+        if (!deep && cached != null && cached.size() == attrs.size() && cached.mtime() == mtime) {
+            actualHash = cached.sha256();
+        } else {
+            actualHash = Checksums.sha256(file);
+            entries.put(expected.path(), new Entry(attrs.size(), mtime, actualHash));
+        }
+        return actualHash.equalsIgnoreCase(expected.sha256());
+    }
+}
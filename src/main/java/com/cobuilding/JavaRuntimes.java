@@ -0,0 +1,336 @@
+package com.cobuilding;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Java для игры, общая для всех папок клиента на компьютере. Скачанные архивы
+ * распаковываются в {@code ~/.aurora-launcher/runtimes/<vendor>-<версия>-<ос>-<arch>},
+ * а путь к исполняемому файлу и SHA-256 архива записываются рядом один раз, так что
+ * при запуске дерево runtime не обходится. Если на компьютере уже стоит подходящий
+ * JDK, скачивание не нужно вовсе.
+ */
+final class JavaRuntimes {
+
+    static final int DEFAULT_MAJOR_VERSION = 21;
+
+    private static final String DESCRIPTOR_FILE_NAME = "runtime.properties";
+    private static final Pattern RELEASE_LINE = Pattern.compile("^([A-Z_]+)=\"?([^\"]*)\"?$", Pattern.MULTILINE);
+    private static final Pattern MAJOR_VERSION = Pattern.compile("\"javaVersion\"\\s*:\\s*\\{[^}]*\"majorVersion\"\\s*:\\s*(\\d+)");
+    private static final Pattern INHERITS_FROM = Pattern.compile("\"inheritsFrom\"\\s*:\\s*\"([^\"]+)\"");
+    // Без них не запустятся LWJGL и окно игры; урезанные jlink-образы их часто не содержат
+    private static final List<String> REQUIRED_MODULES = List.of("java.desktop", "jdk.unsupported");
+
+    /** @param source откуда взят runtime: cache, installed или local (старая папка runtime клиента) */
+    record Installation(Path home, Path executable, String vendor, String version, String arch, String source) {
+
+        int majorVersion() {
+            return JavaRuntimes.majorVersion(version);
+        }
+
+        String describe() {
+            return vendor + " " + version + " " + arch + " (" + source + ", " + home + ")";
+        }
+    }
+
+    private final Path cacheDir;
+    private final TreeDeleter treeDeleter;
+
+    JavaRuntimes(Path cacheDir, TreeDeleter treeDeleter) {
+        this.cacheDir = cacheDir;
+        this.treeDeleter = treeDeleter;
+    }
+
+    static Path defaultCacheDir() {
+        return Paths.get(System.getProperty("user.home"), ".aurora-launcher", "runtimes");
+    }
+
+    /**
+     * Версия Java, которую требует json установленной версии игры, или
+     * {@link #DEFAULT_MAJOR_VERSION}, если клиент еще не установлен.
+     */
+    static int requiredMajorVersion(Path gameDir, String fabricVersion) {
+        String version = fabricVersion;
+        for (int depth = 0; version != null && depth < 3; depth++) {
+            String json;
+            try {
+                json = Files.readString(gameDir.resolve("versions").resolve(version).resolve(version + ".json"));
+            } catch (IOException e) {
+                break;
+            }
+            Matcher major = MAJOR_VERSION.matcher(json);
+            if (major.find()) return Integer.parseInt(major.group(1));
+            Matcher parent = INHERITS_FROM.matcher(json);
+            version = parent.find() ? parent.group(1) : null;
+        }
+        return DEFAULT_MAJOR_VERSION;
+    }
+
+    /**
+     * Описывает runtime в папке, не обходя ее: исполняемый файл ищется в {@code bin},
+     * в {@code Contents/Home/bin} на macOS и на один уровень глубже, куда его кладут архивы
+     * с корневой папкой {@code jdk-21...}.
+     *
+     * @return null, если это не runtime или у него нет файла {@code release}
+     */
+    static Installation describe(Path dir, String source) {
+        if (!Files.isDirectory(dir)) return null;
+        List<Path> homes = new ArrayList<>(List.of(dir, dir.resolve("Contents").resolve("Home")));
+        try (Stream<Path> stream = Files.list(dir)) {
+            stream.filter(Files::isDirectory).sorted().forEach(child -> {
+                homes.add(child);
+                homes.add(child.resolve("Contents").resolve("Home"));
+            });
+        } catch (IOException e) {
+            return null;
+        }
+        for (Path home : homes) {
+            Path executable = home.resolve("bin").resolve(executableName());
+            if (!Files.isRegularFile(executable) || !Files.isExecutable(executable)) continue;
+            Map<String, String> release = readRelease(home);
+            if (release == null) continue;
+            String modules = release.get("MODULES");
+            if (modules != null && !List.of(modules.split("\\s+")).containsAll(REQUIRED_MODULES)) continue;
+            return new Installation(home.toAbsolutePath(), executable.toAbsolutePath(),
+                    release.getOrDefault("IMPLEMENTOR", "unknown"),
+                    release.getOrDefault("JAVA_RUNTIME_VERSION", release.getOrDefault("JAVA_VERSION", "unknown")),
+                    normalizeArch(release.getOrDefault("OS_ARCH", "")), source);
+        }
+        return null;
+    }
+
+    /** Runtime из общего кэша с нужной основной версией; из нескольких берется самый новый. */
+    Installation findCached(int majorVersion) {
+        if (!Files.isDirectory(cacheDir)) return null;
+        try (Stream<Path> stream = Files.list(cacheDir)) {
+            return stream.filter(dir -> !dir.getFileName().toString().startsWith("."))
+                    .map(this::loadDescriptor)
+                    .filter(runtime -> runtime != null && isCompatible(runtime, majorVersion))
+                    .max(Comparator.comparing(Installation::version, LaunchClasspath::compareVersions))
+                    .orElse(null);
+        } catch (IOException e) {
+            System.err.println("Не удалось прочитать кэш Java: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /** Подходящий JDK, уже установленный на компьютере: JAVA_HOME и стандартные папки JDK. */
+    static Installation findInstalled(int majorVersion) {
+        Installation best = null;
+        for (Path candidate : installedCandidates()) {
+            Installation runtime = describe(candidate, "installed");
+            if (runtime == null || !isCompatible(runtime, majorVersion)) continue;
+            if (best == null || LaunchClasspath.compareVersions(runtime.version(), best.version()) > 0) best = runtime;
+        }
+        return best;
+    }
+
+    /**
+     * Распаковывает архив в общий кэш. Если другой лаунчер успел поставить тот же
+     * runtime раньше, распакованная копия выбрасывается и берется его.
+     *
+     * @param archiveSha256 опубликованный SHA-256, с которым архив уже сверен
+     */
+    Installation install(Path archive, String archiveSha256, ZipExtractor zipExtractor, ProgressListener listener) throws IOException {
+        Files.createDirectories(cacheDir);
+        Path staging = Files.createTempDirectory(cacheDir, ".staging-");
+        try {
+            zipExtractor.extract(archive, staging, listener);
+            markExecutables(staging);
+            Installation unpacked = describe(staging, "cache");
+            if (unpacked == null) throw new IOException("В архиве Java не найден runtime с файлом release");
+
+            Path target = cacheDir.resolve(key(unpacked));
+            if (!Files.exists(target)) {
+                try {
+                    Files.move(staging, target, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException e) {
+                    if (!Files.exists(target)) throw e;
+                }
+            }
+            Installation installed = describe(target, "cache");
+            if (installed == null) throw new IOException("Runtime в кэше поврежден: " + target);
+            saveDescriptor(target, installed, archiveSha256);
+            return installed;
+        } finally {
+            if (Files.exists(staging)) treeDeleter.delete(staging, (done, total) -> {});
+        }
+    }
+
+    /** Запоминает runtime, выбранный для папки клиента: следующий запуск проверит только его исполняемый файл. */
+    static void select(Path selectionFile, Installation runtime) throws IOException {
+        Properties props = toProperties(runtime, null);
+        props.setProperty("source", runtime.source());
+        store(selectionFile, props);
+    }
+
+    /** @return null, если выбор не сохранен или runtime с тех пор пропал */
+    static Installation selected(Path selectionFile) {
+        Properties props = load(selectionFile);
+        return props == null ? null : fromProperties(props, null, props.getProperty("source", "unknown"));
+    }
+
+    private Installation loadDescriptor(Path dir) {
+        Properties props = load(dir.resolve(DESCRIPTOR_FILE_NAME));
+        return props == null ? null : fromProperties(props, dir, "cache");
+    }
+
+    private static void saveDescriptor(Path dir, Installation runtime, String archiveSha256) throws IOException {
+        Properties props = toProperties(runtime, dir);
+        props.setProperty("archiveSha256", archiveSha256);
+        store(dir.resolve(DESCRIPTOR_FILE_NAME), props);
+    }
+
+    /** @param base относительно чего записать пути; null — абсолютные */
+    private static Properties toProperties(Installation runtime, Path base) {
+        Properties props = new Properties();
+        props.setProperty("home", (base != null ? base.relativize(runtime.home()) : runtime.home()).toString());
+        props.setProperty("executable", (base != null ? base.relativize(runtime.executable()) : runtime.executable()).toString());
+        props.setProperty("vendor", runtime.vendor());
+        props.setProperty("version", runtime.version());
+        props.setProperty("arch", runtime.arch());
+        return props;
+    }
+
+    private static Installation fromProperties(Properties props, Path base, String source) {
+        String home = props.getProperty("home");
+        String executable = props.getProperty("executable");
+        if (home == null || executable == null) return null;
+        Path executablePath = base != null ? base.resolve(executable) : Paths.get(executable);
+        // Одна проверка вместо обхода: пропавший файл значит, что runtime удалили или испортили
+        if (!Files.isRegularFile(executablePath) || !Files.isExecutable(executablePath)) return null;
+        return new Installation(base != null ? base.resolve(home) : Paths.get(home), executablePath,
+                props.getProperty("vendor", "unknown"), props.getProperty("version", "unknown"), props.getProperty("arch", ""), source);
+    }
+
+    private static Properties load(Path file) {
+        if (!Files.isRegularFile(file)) return null;
+        Properties props = new Properties();
+        try (Reader reader = Files.newBufferedReader(file)) {
+            props.load(reader);
+            return props;
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static void store(Path file, Properties props) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tmp)) {
+            props.store(writer, null);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Zip не хранит права Unix: без них ни java, ни jspawnhelper для дочерних процессов игры не запустятся. */
+    private static void markExecutables(Path dir) throws IOException {
+        if (!dir.getFileSystem().supportedFileAttributeViews().contains("posix")) return;
+        try (Stream<Path> stream = Files.walk(dir)) {
+            for (Path file : stream.filter(Files::isRegularFile).toList()) {
+                Path parent = file.getParent();
+                boolean inBin = parent != null && parent.getFileName().toString().equals("bin");
+                if (inBin || file.getFileName().toString().equals("jspawnhelper")) {
+                    Set<PosixFilePermission> permissions = EnumSet.copyOf(Files.getPosixFilePermissions(file));
+                    permissions.addAll(List.of(PosixFilePermission.OWNER_EXECUTE, PosixFilePermission.GROUP_EXECUTE, PosixFilePermission.OTHERS_EXECUTE));
+                    Files.setPosixFilePermissions(file, permissions);
+                }
+            }
+        }
+    }
+
+    private static boolean isCompatible(Installation runtime, int majorVersion) {
+        String arch = normalizeArch(System.getProperty("os.arch"));
+        return runtime.majorVersion() == majorVersion && (runtime.arch().isEmpty() || runtime.arch().equals(arch));
+    }
+
+    private static List<Path> installedCandidates() {
+        List<Path> roots = new ArrayList<>();
+        String home = System.getProperty("user.home");
+        String os = System.getProperty("os.name").toLowerCase(Locale.ROOT);
+        if (os.contains("win")) {
+            for (String env : List.of("ProgramFiles", "ProgramW6432")) {
+                String programFiles = System.getenv(env);
+                if (programFiles == null) continue;
+                for (String vendor : List.of("Java", "Eclipse Adoptium", "Microsoft", "Zulu", "BellSoft", "Amazon Corretto")) {
+                    roots.add(Paths.get(programFiles, vendor));
+                }
+            }
+        } else if (os.contains("mac")) {
+            roots.add(Paths.get("/Library/Java/JavaVirtualMachines"));
+            roots.add(Paths.get(home, "Library", "Java", "JavaVirtualMachines"));
+        } else {
+            roots.add(Paths.get("/usr/lib/jvm"));
+            roots.add(Paths.get("/usr/java"));
+            roots.add(Paths.get("/opt/java"));
+        }
+        roots.add(Paths.get(home, ".jdks"));
+        roots.add(Paths.get(home, ".sdkman", "candidates", "java"));
+
+        Map<Path, Boolean> candidates = new LinkedHashMap<>();
+        String javaHome = System.getenv("JAVA_HOME");
+        if (javaHome != null && !javaHome.isBlank()) candidates.put(Paths.get(javaHome), true);
+        for (Path root : roots) {
+            if (!Files.isDirectory(root)) continue;
+            try (Stream<Path> stream = Files.list(root)) {
+                stream.filter(Files::isDirectory).forEach(dir -> candidates.put(dir, true));
+            } catch (IOException ignored) {
+                // Нет доступа к папке — пропускаем
+            }
+        }
+        return new ArrayList<>(candidates.keySet());
+    }
+
+    private static Map<String, String> readRelease(Path home) {
+        try {
+            Map<String, String> values = new LinkedHashMap<>();
+            Matcher matcher = RELEASE_LINE.matcher(Files.readString(home.resolve("release")));
+            while (matcher.find()) values.put(matcher.group(1), matcher.group(2));
+            return values;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static String key(Installation runtime) {
+        String os = System.getProperty("os.name").toLowerCase(Locale.ROOT);
+        String osKey = os.contains("win") ? "windows" : os.contains("mac") ? "macos" : "linux";
+        String raw = runtime.vendor() + "-" + runtime.version() + "-" + osKey + "-" + runtime.arch();
+        return raw.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9.+_-]+", "-");
+    }
+
+    static int majorVersion(String version) {
+        Matcher matcher = Pattern.compile("^(?:1\\.)?(\\d+)").matcher(version);
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : -1;
+    }
+
+    private static String normalizeArch(String arch) {
+        String lower = arch.toLowerCase(Locale.ROOT);
+        return switch (lower) {
+            case "amd64", "x86_64", "x64" -> "x64";
+            case "aarch64", "arm64" -> "aarch64";
+            default -> lower;
+        };
+    }
+
+    private static String executableName() {
+        return System.getProperty("os.name").toLowerCase(Locale.ROOT).contains("win") ? "java.exe" : "java";
+    }
+}
@@ -0,0 +1,189 @@
+package com.cobuilding;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Параметры JVM игры под конкретный компьютер: границы кучи с оглядкой на физическую
+ * память, сборщик мусора, число его потоков, pretouch и большие страницы.
+ * Пользователь выбирает заготовку и объем памяти, остальное считается здесь.
+ */
+final class JvmTuning {
+
+    enum Preset {
+        AUTO("auto", "Авто"),
+        LOW_END("low-end", "Слабый ПК"),
+        BALANCED("balanced", "Сбалансированный"),
+        THROUGHPUT("throughput", "Максимальная производительность");
+
+        final String id;
+        private final String title;
+
+        Preset(String id, String title) {
+            this.id = id;
+            this.title = title;
+        }
+
+        static Preset fromId(String id) {
+            for (Preset preset : values()) {
+                if (preset.id.equalsIgnoreCase(id.trim())) return preset;
+            }
+            throw new IllegalArgumentException("Неизвестный профиль JVM: " + id);
+        }
+
+        @Override
+        public String toString() {
+            return title;
+        }
+    }
+
+    /**
+     * @param physicalMemoryMb 0, если узнать не удалось
+     * @param javaVersion      -1, если runtime еще не установлен
+     */
+    record Hardware(int cores, long physicalMemoryMb, int javaVersion, boolean transparentHugePages) {
+
+        static Hardware detect(Path javaHome) {
+            long physical = 0;
+            OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+            if (os instanceof com.sun.management.OperatingSystemMXBean sun) {
+                physical = sun.getTotalMemorySize() / (1024 * 1024);
+            }
+            return new Hardware(Runtime.getRuntime().availableProcessors(), physical,
+                    javaHome != null ? JvmTuning.javaVersion(javaHome) : -1, transparentHugePagesAvailable());
+        }
+    }
+
+    record Profile(Preset preset, int maxHeapMb, int initialHeapMb, String collector, int gcThreads,
+                   List<String> jvmArguments, String warning) {
+
+        String describe() {
+            return String.format("%s: куча %d–%d МБ, %s, потоков GC: %d",
+                    preset, initialHeapMb, maxHeapMb, collector, gcThreads);
+        }
+    }
+
+    private static final int MIN_HEAP_MB = 1024;
+    private static final int MIN_RESERVED_MB = 2048;
+    private static final int LOW_END_MAX_INITIAL_HEAP_MB = 1024;
+    private static final Pattern JAVA_VERSION = Pattern.compile("JAVA_VERSION=\"(?:1\\.)?(\\d+)");
+    private static final Path TRANSPARENT_HUGE_PAGES = Path.of("/sys/kernel/mm/transparent_hugepage/enabled");
+
+    private JvmTuning() {
+    }
+
+    /** Сколько ГБ можно отдать игре, не загоняя систему в своп; 0 — неизвестно. */
+    static int maxHeapGb(long physicalMemoryMb) {
+        if (physicalMemoryMb <= 0) return 0;
+        return (int) Math.max(1, (physicalMemoryMb - reservedMb(physicalMemoryMb)) / 1024);
+    }
+
+    static Profile build(Preset requested, int requestedHeapGb, Hardware hardware) {
+        Preset preset = requested == Preset.AUTO ? choose(hardware) : requested;
+
+        int maxHeapMb = requestedHeapGb * 1024;
+        String warning = null;
+        if (hardware.physicalMemoryMb() > 0) {
+            int limitMb = (int) Math.max(MIN_HEAP_MB, hardware.physicalMemoryMb() - reservedMb(hardware.physicalMemoryMb()));
+            if (maxHeapMb > limitMb) {
+                warning = String.format("Игре выделено %d МБ вместо %d МБ: на компьютере всего %d МБ памяти",
+                        limitMb, maxHeapMb, hardware.physicalMemoryMb());
+                maxHeapMb = limitMb;
+            }
+        }
+        maxHeapMb = Math.max(MIN_HEAP_MB, maxHeapMb);
+
+        int cores = Math.max(1, hardware.cores());
+        List<String> args = new ArrayList<>();
+        int initialHeapMb;
+        String collector;
+        int gcThreads;
+        switch (preset) {
+            case LOW_END -> {
+                initialHeapMb = Math.min(maxHeapMb, LOW_END_MAX_INITIAL_HEAP_MB);
+                collector = "G1";
+                gcThreads = Math.min(cores, 2);
+                args.add("-XX:+UseG1GC");
+                args.add("-XX:MaxGCPauseMillis=100");
+                args.add("-XX:ConcGCThreads=1");
+            }
+            case THROUGHPUT -> {
+                initialHeapMb = maxHeapMb;
+                gcThreads = cores;
+                // Поколенческий ZGC держит паузы в доли миллисекунды, но ему нужны ядра и запас кучи
+                if (hardware.javaVersion() >= 21 && cores >= 4 && maxHeapMb >= 6 * 1024) {
+                    collector = "ZGC";
+                    args.add("-XX:+UseZGC");
+                    // С JDK 23 ZGC поколенческий по умолчанию, а флаг устарел
+                    if (hardware.javaVersion() < 23) args.add("-XX:+ZGenerational");
+                    args.add("-XX:ConcGCThreads=" + Math.max(2, cores / 4));
+                } else {
+                    collector = "G1";
+                    args.add("-XX:+UseG1GC");
+                    args.add("-XX:MaxGCPauseMillis=50");
+                    args.add("-XX:+ParallelRefProcEnabled");
+                    args.add("-XX:ConcGCThreads=" + Math.max(1, cores / 4));
+                }
+                args.add("-XX:+AlwaysPreTouch");
+                if (hardware.transparentHugePages()) args.add("-XX:+UseTransparentHugePages");
+            }
+            default -> {
+                initialHeapMb = Math.max(Math.min(maxHeapMb, MIN_HEAP_MB), maxHeapMb / 2);
+                collector = "G1";
+                // Пара ядер остается потоку отрисовки и серверу мира
+                gcThreads = Math.max(1, cores - 2);
+                args.add("-XX:+UseG1GC");
+                args.add("-XX:MaxGCPauseMillis=50");
+                args.add("-XX:+ParallelRefProcEnabled");
+                args.add("-XX:ConcGCThreads=" + Math.max(1, gcThreads / 4));
+            }
+        }
+        args.add("-XX:ParallelGCThreads=" + gcThreads);
+        // Моды иногда зовут System.gc() и подвешивают игру на полную сборку
+        args.add("-XX:+DisableExplicitGC");
+
+        List<String> jvmArguments = new ArrayList<>();
+        jvmArguments.add("-Xms" + initialHeapMb + "M");
+        jvmArguments.add("-Xmx" + maxHeapMb + "M");
+        jvmArguments.addAll(args);
+        return new Profile(preset, maxHeapMb, initialHeapMb, collector, gcThreads, List.copyOf(jvmArguments), warning);
+    }
+
+    /** Основная версия Java из файла {@code release} runtime или -1. */
+    static int javaVersion(Path javaHome) {
+        try {
+            Matcher matcher = JAVA_VERSION.matcher(Files.readString(javaHome.resolve("release")));
+            return matcher.find() ? Integer.parseInt(matcher.group(1)) : -1;
+        } catch (IOException | NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static Preset choose(Hardware hardware) {
+        long memory = hardware.physicalMemoryMb();
+        if (hardware.cores() <= 2 || (memory > 0 && memory < 6 * 1024)) return Preset.LOW_END;
+        if (hardware.cores() >= 8 && memory >= 16 * 1024) return Preset.THROUGHPUT;
+        return Preset.BALANCED;
+    }
+
+    private static long reservedMb(long physicalMemoryMb) {
+        return Math.max(MIN_RESERVED_MB, physicalMemoryMb / 4);
+    }
+
+    private static boolean transparentHugePagesAvailable() {
+        // На Windows большие страницы требуют отдельной привилегии, их не включаем
+        try {
+            String mode = Files.readString(TRANSPARENT_HUGE_PAGES);
+            return mode.contains("[always]") || mode.contains("[madvise]");
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package com.cobuilding;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Раздача проверенных файлов клиента другим лаунчерам в локальной сети.
+ * <p>
+ * Раздающий лаунчер поднимает HTTP-сервер и отдает backup-архив клиента, архив Java
+ * и отдельные файлы установленной версии по манифесту. Остальные находят его по
+ * адресам из настроек или multicast-запросом и пробуют раньше интернета. Раздающему
+ * никто не доверяет: каждый полученный файл сверяется с checksums.txt или манифестом,
+ * скачанными с основного сервера, и при расхождении качается оттуда.
+ */
+final class LanPeers implements AutoCloseable {
+
+    static final int DEFAULT_PORT = 47625;
+
+    private static final InetSocketAddress MULTICAST_GROUP = new InetSocketAddress("239.255.76.67", 47626);
+    private static final String QUERY = "aurora-launcher-peers?";
+    private static final String ANSWER_PREFIX = "aurora-launcher-peer ";
+    private static final int DISCOVERY_TIMEOUT_MILLIS = 700;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+    record Artifact(Path file, String sha256) {}
+
+    /** Что раздающий лаунчер может отдать прямо сейчас; null — такого файла нет. */
+    interface Catalog {
+        Artifact clientArchive(String version);
+
+        Artifact javaArchive();
+
+        Path clientFile(String version, String path);
+    }
+
+    private final HttpServer server;
+    private final MulticastSocket multicast;
+    private final ExecutorService executor;
+
+    private LanPeers(HttpServer server, MulticastSocket multicast, ExecutorService executor) {
+        this.server = server;
+        this.multicast = multicast;
+        this.executor = executor;
+    }
+
+    /** Начинает раздачу; при {@code answerMulticast} отвечает на поиск раздающих в сети. */
+    static LanPeers serve(Catalog catalog, int port, boolean answerMulticast) throws IOException {
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/", exchange -> handle(catalog, exchange));
+        server.setExecutor(executor);
+        server.start();
+
+        MulticastSocket multicast = null;
+        if (answerMulticast) {
+            try {
+                multicast = new MulticastSocket(MULTICAST_GROUP.getPort());
+                multicast.joinGroup(MULTICAST_GROUP, null);
+                MulticastSocket socket = multicast;
+                int httpPort = server.getAddress().getPort();
+                Thread responder = new Thread(() -> answerQueries(socket, httpPort), "lan-peer-discovery");
+                responder.setDaemon(true);
+                responder.start();
+            } catch (IOException e) {
+                // Раздача по настроенному адресу работает и без multicast
+                System.err.println("Не удалось включить поиск раздающих через multicast: " + e.getMessage());
+                if (multicast != null) multicast.close();
+                multicast = null;
+            }
+        }
+        System.out.println("Раздача файлов клиента в локальной сети на порту " + server.getAddress().getPort());
+        return new LanPeers(server, multicast, executor);
+    }
+
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        if (multicast != null) multicast.close();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * @param configured адреса вида {@code host:port} или {@code host} из настроек
+     * @return базовые адреса раздающих, например {@code http://10.0.0.5:47625}
+     */
+    static List<String> discover(List<String> configured, boolean useMulticast) {
+        Set<String> peers = new LinkedHashSet<>();
+        for (String address : configured) {
+            String hostPort = address.contains(":") ? address : address + ":" + DEFAULT_PORT;
+            peers.add("http://" + hostPort);
+        }
+        if (useMulticast) {
+            try (DatagramSocket socket = new DatagramSocket()) {
+                byte[] query = QUERY.getBytes(StandardCharsets.US_ASCII);
+                socket.send(new DatagramPacket(query, query.length, MULTICAST_GROUP));
+                long deadline = System.currentTimeMillis() + DISCOVERY_TIMEOUT_MILLIS;
+                byte[] buffer = new byte[256];
+                while (true) {
+                    long left = deadline - System.currentTimeMillis();
+                    if (left <= 0) break;
+                    socket.setSoTimeout((int) left);
+                    DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                    try {
+                        socket.receive(packet);
+                    } catch (SocketTimeoutException e) {
+                        break;
+                    }
+                    String answer = new String(packet.getData(), 0, packet.getLength(), StandardCharsets.US_ASCII);
+                    if (!answer.startsWith(ANSWER_PREFIX)) continue;
+                    try {
+                        int port = Integer.parseInt(answer.substring(ANSWER_PREFIX.length()).trim());
+                        peers.add("http://" + hostLiteral(packet.getAddress()) + ":" + port);
+                    } catch (NumberFormatException ignored) {
+                        // Чужой или испорченный ответ
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Поиск раздающих в сети не удался: " + e.getMessage());
+            }
+        }
+        return new ArrayList<>(peers);
+    }
+
+    static String clientArchiveUrl(String peer, String version) {
+        return peer + "/client/" + encode(version) + "/client.zip";
+    }
+
+    static String javaArchiveUrl(String peer) {
+        return peer + "/java/Java.zip";
+    }
+
+    static String clientFileUrl(String peer, String version, String path) {
+        return peer + "/files/" + encode(version) + "/"
+                + Arrays.stream(path.split("/")).map(LanPeers::encode).collect(Collectors.joining("/"));
+    }
+
+    private static void answerQueries(MulticastSocket socket, int httpPort) {
+        byte[] buffer = new byte[256];
+        byte[] answer = (ANSWER_PREFIX + httpPort).getBytes(StandardCharsets.US_ASCII);
+        while (!socket.isClosed()) {
+            try {
+                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                socket.receive(packet);
+                String query = new String(packet.getData(), 0, packet.getLength(), StandardCharsets.US_ASCII);
+                if (query.equals(QUERY)) {
+                    socket.send(new DatagramPacket(answer, answer.length, packet.getSocketAddress()));
+                }
+            } catch (SocketException e) {
+                return;
+            } catch (IOException e) {
+                System.err.println("Ошибка ответа на поиск раздающих: " + e.getMessage());
+            }
+        }
+    }
+
+    private static void handle(Catalog catalog, HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET") && !exchange.getRequestMethod().equals("HEAD")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            Artifact artifact = resolve(catalog, exchange.getRequestURI());
+            if (artifact == null || !Files.isRegularFile(artifact.file())) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            send(exchange, artifact);
+        } catch (RuntimeException e) {
+            System.err.println("Ошибка раздачи " + exchange.getRequestURI() + ": " + e);
+        }
+    }
+
+    private static Artifact resolve(Catalog catalog, URI uri) {
+        String[] parts = uri.getRawPath().split("/", 4);
+        // ["", "client", version, "client.zip"], ["", "java", "Java.zip"], ["", "files", version, path]
+        if (parts.length == 4 && parts[1].equals("client") && parts[3].equals("client.zip")) {
+            return catalog.clientArchive(decode(parts[2]));
+        }
+        if (parts.length == 3 && parts[1].equals("java") && parts[2].equals("Java.zip")) {
+            return catalog.javaArchive();
+        }
+        if (parts.length == 4 && parts[1].equals("files")) {
+            String path = Arrays.stream(parts[3].split("/")).map(LanPeers::decode).collect(Collectors.joining("/"));
+            Path file = catalog.clientFile(decode(parts[2]), path);
+            return file == null ? null : new Artifact(file, null);
+        }
+        return null;
+    }
+
+    private static void send(HttpExchange exchange, Artifact artifact) throws IOException {
+        try (FileChannel channel = FileChannel.open(artifact.file(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long from = 0;
+            long to = size - 1;
+            exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+            // Хэш содержимого — самый надежный валидатор для докачки через If-Range
+            if (artifact.sha256() != null) exchange.getResponseHeaders().add("ETag", "\"" + artifact.sha256() + "\"");
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+            boolean rangeApplies = range != null && (ifRange == null || ifRange.equals("\"" + artifact.sha256() + "\""));
+            Matcher matcher = rangeApplies ? RANGE.matcher(range) : null;
+            if (matcher != null && matcher.matches()) {
+                from = Long.parseLong(matcher.group(1));
+                if (!matcher.group(2).isEmpty()) to = Math.min(to, Long.parseLong(matcher.group(2)));
+                if (from > to) {
+                    exchange.getResponseHeaders().add("Content-Range", "bytes */" + size);
+                    exchange.sendResponseHeaders(416, -1);
+                    return;
+                }
+                exchange.getResponseHeaders().add("Content-Range", "bytes " + from + "-" + to + "/" + size);
+                exchange.sendResponseHeaders(206, exchange.getRequestMethod().equals("HEAD") ? -1 : to - from + 1);
+            } else {
+                exchange.sendResponseHeaders(200, exchange.getRequestMethod().equals("HEAD") || size == 0 ? -1 : size);
+            }
+            if (exchange.getRequestMethod().equals("HEAD") || size == 0) return;
+            try (OutputStream out = exchange.getResponseBody();
+                 InputStream in = Channels.newInputStream(channel.position(from))) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                long left = to - from + 1;
+                while (left > 0) {
+                    int read = in.read(buffer, 0, (int) Math.min(buffer.length, left));
+                    if (read < 0) break;
+                    out.write(buffer, 0, read);
+                    left -= read;
+                }
+            }
+        }
+    }
+
+    private static String hostLiteral(InetAddress address) {
+        String host = address.getHostAddress();
+        return host.contains(":") ? "[" + host + "]" : host;
+    }
+
+    private static String encode(String segment) {
+        return URLEncoder.encode(segment, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+
+    private static String decode(String segment) {
+        return URLDecoder.decode(segment.replace("+", "%2B"), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,274 @@
+package com.cobuilding;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Classpath и main-класс игры, один раз собранные обходом {@code libraries} и
+ * сохраненные в {@code launch-cache.properties}. Ключ кэша — установленная версия
+ * плюс отпечаток списка файлов {@code libraries} и {@code versions} (пути, размеры,
+ * время изменения). Отпечаток считается не при запуске, а тем, кто меняет файлы
+ * клиента, через {@link #treeChanged}, так что запуск из кэша читает два маленьких
+ * файла и не обходит дерево. Сам classpath пишется в argfile, чтобы не упираться
+ * в лимит длины командной строки Windows.
+ */
+final class LaunchClasspath {
+
+    static final String DEFAULT_MAIN_CLASS = "net.fabricmc.loader.impl.launch.knot.KnotClient";
+
+    private static final String CACHE_FILE_NAME = "launch-cache.properties";
+    private static final String ARG_FILE_NAME = "launch-classpath.args";
+    private static final String TREE_FINGERPRINT_FILE_NAME = "launch-tree.fingerprint";
+    private static final Pattern MAIN_CLASS = Pattern.compile("\"mainClass\"\\s*:\\s*\"([^\"]+)\"");
+    private static final Pattern VERSION_PART = Pattern.compile("\\d+|\\D+");
+
+    record Spec(String fabricVersion, String mainClass, List<Path> classpath, Path argFile) {}
+
+    private LaunchClasspath() {}
+
+    static Spec resolve(Path gameDir, String installedVersion) throws IOException {
+        String fingerprint = installedVersion + "/" + storedTreeFingerprint(gameDir);
+        Spec cached = loadCached(gameDir, fingerprint);
+        if (cached != null) return cached;
+
+        Spec built = build(gameDir);
+        if (built.fabricVersion() != null && !built.classpath().isEmpty()) {
+            save(gameDir, fingerprint, built);
+        }
+        return built;
+    }
+
+    static String findFabricVersion(Path gameDir) throws IOException {
+        Path versionsDir = gameDir.resolve("versions");
+        if (!Files.isDirectory(versionsDir)) return null;
+        try (Stream<Path> stream = Files.list(versionsDir)) {
+            return stream.filter(Files::isDirectory)
+                    .map(path -> path.getFileName().toString())
+                    .filter(name -> name.toLowerCase().contains("fabric"))
+                    .findFirst().orElse(null);
+        }
+    }
+
+    /**
+     * Запоминает отпечаток {@code libraries} и {@code versions}. Вызывается после полной
+     * установки, пофайлового обновления, переключения слота и починки файлов.
+     */
+    static void treeChanged(Path gameDir) {
+        Path file = gameDir.resolve(TREE_FINGERPRINT_FILE_NAME);
+        try {
+            Files.writeString(file, fingerprintTree(gameDir));
+        } catch (IOException e) {
+            // Без сохраненного отпечатка следующий запуск посчитает его сам
+            System.err.println("Не удалось сохранить отпечаток библиотек: " + e.getMessage());
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static String storedTreeFingerprint(Path gameDir) throws IOException {
+        Path file = gameDir.resolve(TREE_FINGERPRINT_FILE_NAME);
+        if (Files.exists(file)) return Files.readString(file).trim();
+        // Клиент поставлен до появления отпечатка: один обход, дальше запуски его не повторяют
+        String fingerprint = fingerprintTree(gameDir);
+        Files.writeString(file, fingerprint);
+        return fingerprint;
+    }
+
+    private static String fingerprintTree(Path gameDir) throws IOException {
+        MessageDigest md = Checksums.newSha256();
+        for (String dir : List.of("libraries", "versions")) {
+            Path root = gameDir.resolve(dir);
+            if (!Files.isDirectory(root)) continue;
+            // Порядок листинга зависит от ОС и ФС, поэтому строки сортируются перед хэшированием
+            List<String> entries = new ArrayList<>();
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    entries.add(root.relativize(file).toString().replace('\\', '/') + "|" + attrs.size()
+                            + "|" + attrs.lastModifiedTime().toMillis());
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            entries.sort(null);
+            md.update(("\n" + dir + "\n").getBytes(StandardCharsets.UTF_8));
+            for (String entry : entries) {
+                md.update((entry + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return Checksums.toHex(md.digest());
+    }
+
+    private static Spec loadCached(Path gameDir, String fingerprint) {
+        Path cacheFile = gameDir.resolve(CACHE_FILE_NAME);
+        Path argFile = gameDir.resolve(ARG_FILE_NAME);
+        if (!Files.exists(cacheFile) || !Files.exists(argFile)) return null;
+
+        Properties props = new Properties();
+        try (Reader reader = Files.newBufferedReader(cacheFile)) {
+            props.load(reader);
+        } catch (IOException e) {
+            return null;
+        }
+        if (!fingerprint.equals(props.getProperty("fingerprint"))) return null;
+
+        List<Path> classpath = new ArrayList<>();
+        for (String entry : props.getProperty("classpath", "").split("\n")) {
+            // Наличие jar не проверяется: за файлами следят проверка целостности и отпечаток
+            if (!entry.isEmpty()) classpath.add(gameDir.resolve(entry));
+        }
+        String fabricVersion = props.getProperty("fabricVersion");
+        if (classpath.isEmpty() || fabricVersion == null) return null;
+        return new Spec(fabricVersion, props.getProperty("mainClass", DEFAULT_MAIN_CLASS), classpath, argFile);
+    }
+
+    private static Spec build(Path gameDir) throws IOException {
+        String fabricVersion = findFabricVersion(gameDir);
+        Path librariesDir = gameDir.resolve("libraries");
+        List<Path> classpath = new ArrayList<>();
+        if (Files.isDirectory(librariesDir)) {
+            List<Path> jars;
+            try (Stream<Path> stream = Files.walk(librariesDir)) {
+                jars = stream.filter(path -> path.toString().toLowerCase().endsWith(".jar")).sorted().toList();
+            }
+            classpath.addAll(dropDuplicateLibraries(librariesDir, jars));
+        }
+
+        String mainClass = DEFAULT_MAIN_CLASS;
+        if (fabricVersion != null) {
+            Path versionDir = gameDir.resolve("versions").resolve(fabricVersion);
+            Path versionJar = versionDir.resolve(fabricVersion + ".jar");
+            if (Files.exists(versionJar)) classpath.add(versionJar);
+            mainClass = readMainClass(versionDir.resolve(fabricVersion + ".json"));
+        }
+        return new Spec(fabricVersion, mainClass, classpath, gameDir.resolve(ARG_FILE_NAME));
+    }
+
+    /**
+     * В maven-раскладке {@code group/artifact/version/artifact-version[-classifier].jar}
+     * оставляет для каждой пары artifact+classifier только самую новую версию.
+     */
+    private static List<Path> dropDuplicateLibraries(Path librariesDir, List<Path> jars) {
+        Map<String, Path> selected = new LinkedHashMap<>();
+        Map<String, String> selectedVersions = new LinkedHashMap<>();
+        for (Path jar : jars) {
+            Path relative = librariesDir.relativize(jar);
+            int n = relative.getNameCount();
+            String key = relative.toString();
+            String version = null;
+            if (n >= 4) {
+                String artifact = relative.getName(n - 3).toString();
+                String candidateVersion = relative.getName(n - 2).toString();
+                String fileName = relative.getName(n - 1).toString();
+                String prefix = artifact + "-" + candidateVersion;
+                if (fileName.startsWith(prefix)) {
+                    String classifier = fileName.substring(prefix.length(), fileName.length() - ".jar".length());
+                    key = relative.subpath(0, n - 2) + ":" + classifier;
+                    version = candidateVersion;
+                }
+            }
+
+            String previousVersion = selectedVersions.get(key);
+            if (!selected.containsKey(key)) {
+                selected.put(key, jar);
+                selectedVersions.put(key, version);
+            } else {
+                boolean newer = compareVersions(version, previousVersion) > 0;
+                String kept = newer ? version : previousVersion;
+                System.out.println("Дубликат библиотеки " + key + ": " + previousVersion + " и " + version + ", оставлена " + kept);
+                if (newer) {
+                    selected.put(key, jar);
+                    selectedVersions.put(key, version);
+                }
+            }
+        }
+        return new ArrayList<>(selected.values());
+    }
+
+    static int compareVersions(String a, String b) {
+        Matcher ma = VERSION_PART.matcher(a);
+        Matcher mb = VERSION_PART.matcher(b);
+        while (true) {
+            boolean hasA = ma.find();
+            boolean hasB = mb.find();
+            if (!hasA || !hasB) return Boolean.compare(hasA, hasB);
+            String pa = ma.group();
+            String pb = mb.group();
+            int result;
+            if (Character.isDigit(pa.charAt(0)) && Character.isDigit(pb.charAt(0))) {
+                result = Comparator.<String>comparingInt(String::length).thenComparing(Comparator.naturalOrder())
+                        .compare(stripLeadingZeros(pa), stripLeadingZeros(pb));
+            } else {
+                result = pa.compareTo(pb);
+            }
+            if (result != 0) return result;
+        }
+    }
+
+    private static String stripLeadingZeros(String digits) {
+        String stripped = digits.replaceFirst("^0+(?=\\d)", "");
+        return stripped.isEmpty() ? "0" : stripped;
+    }
+
+    private static String readMainClass(Path versionJson) {
+        try {
+            Matcher matcher = MAIN_CLASS.matcher(Files.readString(versionJson));
+            if (matcher.find()) return matcher.group(1);
+        } catch (IOException ignored) {
+            // Нет json версии — используем стандартный загрузчик Fabric
+        }
+        return DEFAULT_MAIN_CLASS;
+    }
+
+    private static void save(Path gameDir, String fingerprint, Spec spec) throws IOException {
+        StringBuilder classpath = new StringBuilder();
+        for (Path jar : spec.classpath()) {
+            if (classpath.length() > 0) classpath.append('\n');
+            classpath.append(gameDir.relativize(jar));
+        }
+        Properties props = new Properties();
+        props.setProperty("fingerprint", fingerprint);
+        props.setProperty("fabricVersion", spec.fabricVersion());
+        props.setProperty("mainClass", spec.mainClass());
+        props.setProperty("classpath", classpath.toString());
+
+        writeArgFile(spec);
+        Path cacheFile = gameDir.resolve(CACHE_FILE_NAME);
+        Path tmp = cacheFile.resolveSibling(CACHE_FILE_NAME + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tmp)) {
+            props.store(writer, null);
+        }
+        Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeArgFile(Spec spec) throws IOException {
+        StringBuilder classpath = new StringBuilder();
+        for (Path jar : spec.classpath()) {
+            if (classpath.length() > 0) classpath.append(File.pathSeparatorChar);
+            classpath.append(jar.toAbsolutePath());
+        }
+        // В argfile обратный слеш внутри кавычек экранирует следующий символ
+        String quoted = "\"" + classpath.toString().replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+        Files.writeString(spec.argFile(), "-cp\n" + quoted + "\n");
+    }
+}
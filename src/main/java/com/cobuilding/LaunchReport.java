@@ -0,0 +1,155 @@
+package com.cobuilding;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Время и объем работы каждого этапа одного запуска. В конце запуска отчет
+ * дописывается одной JSON-строкой в {@code logs/launcher-perf.jsonl}; когда файл
+ * вырастает больше {@link #MAX_LOG_BYTES}, он сдвигается в {@code .1} и начинается заново.
+ */
+final class LaunchReport {
+
+    static final String LOG_FILE_NAME = "launcher-perf.jsonl";
+
+    private static final long MAX_LOG_BYTES = 1024 * 1024;
+
+    private record PhaseRecord(String name, long nanos, long bytes, long files) {}
+
+    final class Phase implements AutoCloseable {
+        private final String name;
+        private final long startNanos = System.nanoTime();
+        private long bytes;
+        private long files;
+        private boolean closed;
+
+        private Phase(String name) {
+            this.name = name;
+        }
+
+        Phase bytes(long bytes) {
+            this.bytes = bytes;
+            return this;
+        }
+
+        Phase files(long files) {
+            this.files = files;
+            return this;
+        }
+
+        @Override
+        public void close() {
+            if (closed) return;
+            closed = true;
+            add(new PhaseRecord(name, System.nanoTime() - startNanos, bytes, files));
+        }
+    }
+
+    private final long startNanos = System.nanoTime();
+    private final Instant startedAt = Instant.now();
+    private final List<PhaseRecord> phases = new ArrayList<>();
+    private final List<String[]> attributes = new ArrayList<>();
+
+    Phase begin(String name) {
+        return new Phase(name);
+    }
+
+    /** Время от начала запуска, например до момента, когда процесс игры жив. */
+    void mark(String name) {
+        add(new PhaseRecord(name, System.nanoTime() - startNanos, 0, 0));
+    }
+
+    synchronized void attribute(String key, String value) {
+        attributes.add(new String[]{key, value});
+    }
+
+    private synchronized void add(PhaseRecord phase) {
+        phases.add(phase);
+    }
+
+    synchronized String toJson(String outcome, String error) {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("{\"startedAt\":").append(quote(startedAt.toString()))
+                .append(",\"outcome\":").append(quote(outcome))
+                .append(",\"totalMs\":").append(millis(System.nanoTime() - startNanos));
+        if (error != null) sb.append(",\"error\":").append(quote(error));
+        for (String[] attribute : attributes) {
+            sb.append(',').append(quote(attribute[0])).append(':').append(quote(attribute[1]));
+        }
+        sb.append(",\"cores\":").append(Runtime.getRuntime().availableProcessors());
+        sb.append(",\"phases\":[");
+        for (int i = 0; i < phases.size(); i++) {
+            PhaseRecord phase = phases.get(i);
+            if (i > 0) sb.append(',');
+            sb.append("{\"name\":").append(quote(phase.name())).append(",\"ms\":").append(millis(phase.nanos()));
+            if (phase.bytes() > 0) {
+                sb.append(",\"bytes\":").append(phase.bytes())
+                        .append(",\"mbPerSec\":").append(String.format(Locale.ROOT, "%.2f", megabytesPerSecond(phase)));
+            }
+            if (phase.files() > 0) sb.append(",\"files\":").append(phase.files());
+            sb.append('}');
+        }
+        return sb.append("]}").toString();
+    }
+
+    /** Короткая сводка для экрана настроек: общее время и самые долгие этапы. */
+    synchronized String summary() {
+        StringBuilder sb = new StringBuilder(String.format("Всего %.1f с", (System.nanoTime() - startNanos) / 1e9));
+        phases.stream()
+                .filter(phase -> phase.bytes() > 0 || phase.files() > 0 || phase.nanos() >= 100_000_000L)
+                .sorted((a, b) -> Long.compare(b.nanos(), a.nanos()))
+                .limit(4)
+                .forEach(phase -> {
+                    sb.append(String.format("\n%s: %.1f с", phase.name(), phase.nanos() / 1e9));
+                    if (phase.bytes() > 0) sb.append(String.format(", %.1f МБ/с", megabytesPerSecond(phase)));
+                });
+        return sb.toString();
+    }
+
+    void append(Path logsDir, String outcome, String error) {
+        try {
+            Files.createDirectories(logsDir);
+            Path log = logsDir.resolve(LOG_FILE_NAME);
+            if (Files.exists(log) && Files.size(log) > MAX_LOG_BYTES) {
+                Files.move(log, logsDir.resolve(LOG_FILE_NAME + ".1"), StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.writeString(log, toJson(outcome, error) + "\n", StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.err.println("Не удалось записать журнал производительности: " + e.getMessage());
+        }
+    }
+
+    private static double megabytesPerSecond(PhaseRecord phase) {
+        return phase.nanos() > 0 ? phase.bytes() / (1024.0 * 1024) / (phase.nanos() / 1e9) : 0;
+    }
+
+    private static long millis(long nanos) {
+        return nanos / 1_000_000;
+    }
+
+    static String quote(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
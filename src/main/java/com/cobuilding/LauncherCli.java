@@ -0,0 +1,197 @@
+package com.cobuilding;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+/**
+ * Режим без окна для скриптов и массовой подготовки машин:
+ * <pre>
+ *   --update-only                 скачать и установить клиент и Java, не запуская игру
+ *   --verify                      полностью перепроверить файлы клиента и починить поврежденные
+ *   --launch --nick &lt;ник&gt;         обновить и запустить игру
+ *   --serve                       раздавать файлы клиента в локальной сети, пока процесс не остановят
+ *   --make-patch &lt;старый&gt; &lt;новый&gt; &lt;патч&gt;
+ *                                 построить бинарный патч для публикации в patches.txt релиза
+ *   --ram &lt;ГБ&gt;                    память для игры, по умолчанию из ram.txt
+ *   --jvm-preset &lt;профиль&gt;       auto, low-end, balanced или throughput, по умолчанию из jvm_preset.txt
+ *   --game-dir &lt;папка&gt;            папка, в которой лежит .aurora-client
+ * </pre>
+ * В stdout идут только события в формате JSON, по одному объекту на строку; вся
+ * диагностика уходит в stderr. Код выхода: 0 — успех, 1 — ошибка, 2 — неверные аргументы.
+ */
+final class LauncherCli {
+
+    private static final int EXIT_OK = 0;
+    private static final int EXIT_FAILED = 1;
+    private static final int EXIT_USAGE = 2;
+
+    private final PrintStream events;
+
+    private LauncherCli(PrintStream events) {
+        this.events = events;
+    }
+
+    static boolean isCliInvocation(String[] args) {
+        for (String arg : args) {
+            if (arg.equals("--update-only") || arg.equals("--verify") || arg.equals("--launch")
+                    || arg.equals("--serve") || arg.equals("--make-patch")) return true;
+        }
+        return false;
+    }
+
+    public static void main(String[] args) {
+        PrintStream events = new PrintStream(System.out, true, StandardCharsets.UTF_8);
+        // Сообщения движка для людей не должны смешиваться с JSON
+        System.setOut(System.err);
+        System.exit(new LauncherCli(events).run(args));
+    }
+
+    private int run(String[] args) {
+        String mode = null;
+        String nickname = null;
+        Integer ramGb = null;
+        JvmTuning.Preset preset = null;
+        Path gameDir = null;
+        Path[] patchFiles = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--update-only", "--verify", "--launch", "--serve" -> {
+                        if (mode != null) return usage("Можно указать только один режим");
+                        mode = args[i].substring(2);
+                    }
+                    case "--make-patch" -> {
+                        if (mode != null) return usage("Можно указать только один режим");
+                        mode = "make-patch";
+                        patchFiles = new Path[]{Paths.get(value(args, ++i)), Paths.get(value(args, ++i)), Paths.get(value(args, ++i))};
+                    }
+                    case "--nick" -> nickname = value(args, ++i);
+                    case "--ram" -> ramGb = Integer.parseInt(value(args, ++i));
+                    case "--jvm-preset" -> preset = JvmTuning.Preset.fromId(value(args, ++i));
+                    case "--game-dir" -> gameDir = LauncherEngine.gameDirectoryIn(Paths.get(value(args, ++i)));
+                    default -> {
+                        return usage("Неизвестный аргумент: " + args[i]);
+                    }
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            return usage(e.getMessage());
+        }
+        if (mode == null) return usage("Не указан режим");
+        if (mode.equals("make-patch")) return makePatch(patchFiles[0], patchFiles[1], patchFiles[2]);
+
+        LauncherEngine engine = new LauncherEngine(gameDir != null ? gameDir : LauncherEngine.resolveGameDirectory(),
+                text -> emit("status", "\"message\":" + LaunchReport.quote(text)), new JsonProgressSink());
+        if (mode.equals("serve")) return serve(engine);
+        if (mode.equals("launch")) {
+            if (nickname == null || nickname.isBlank()) nickname = engine.loadNickname();
+            if (nickname.isBlank()) return usage("Для --launch нужен --nick");
+        }
+
+        String launchNickname = nickname;
+        int launchRam = ramGb != null ? ramGb : engine.loadRamSetting();
+        JvmTuning.Preset launchPreset = preset != null ? preset : engine.loadJvmPreset();
+        String runMode = mode;
+        try {
+            boolean ok = engine.session(mode, () -> switch (runMode) {
+                case "verify" -> engine.repairInstallation(true);
+                case "update-only" -> {
+                    engine.update();
+                    yield true;
+                }
+                default -> {
+                    engine.update();
+                    Path logsDir = engine.gameDirectory().resolve("logs");
+                    Files.createDirectories(logsDir);
+                    // Лаунчер завершится раньше игры, поэтому ее вывод пишется в файл, а не в наш stdout
+                    Path gameLog = logsDir.resolve(GameSupervisor.LOG_FILE_NAME);
+                    GameSupervisor.rotateIfLarge(gameLog, engine.gameLogMaxBytes());
+                    Process process = engine.launch(launchNickname, launchRam, launchPreset,
+                            ProcessBuilder.Redirect.appendTo(gameLog.toFile()));
+                    emit("launched", "\"pid\":" + process.pid());
+                    yield true;
+                }
+            });
+            emitResult(engine, ok, ok ? null : "Клиент поврежден и будет переустановлен при следующем обновлении");
+            return ok ? EXIT_OK : EXIT_FAILED;
+        } catch (Exception e) {
+            e.printStackTrace();
+            emitResult(engine, false, e.getMessage() != null ? e.getMessage() : e.toString());
+            return EXIT_FAILED;
+        }
+    }
+
+    private int serve(LauncherEngine engine) {
+        try {
+            LanPeers peers = engine.servePeers();
+            emit("serving", "\"port\":" + peers.port());
+            // Сервер работает на своих потоках, основному остается только ждать остановки
+            Thread.currentThread().join();
+            return EXIT_OK;
+        } catch (Exception e) {
+            e.printStackTrace();
+            emit("result", "\"ok\":false,\"error\":" + LaunchReport.quote(e.getMessage() != null ? e.getMessage() : e.toString()));
+            return EXIT_FAILED;
+        }
+    }
+
+    /** Строит патч и выводит поля для строки patches.txt; тег релиза и имя файла дописывает публикующий. */
+    private int makePatch(Path oldFile, Path newFile, Path patchFile) {
+        try {
+            BinaryPatch.create(oldFile, newFile, patchFile);
+            emit("patch", "\"from\":\"" + Checksums.sha256(oldFile) + "\",\"to\":\"" + Checksums.sha256(newFile)
+                    + "\",\"size\":" + Files.size(patchFile) + ",\"newSize\":" + Files.size(newFile));
+            return EXIT_OK;
+        } catch (IOException e) {
+            e.printStackTrace();
+            emit("result", "\"ok\":false,\"error\":" + LaunchReport.quote(e.getMessage() != null ? e.getMessage() : e.toString()));
+            return EXIT_FAILED;
+        }
+    }
+
+    private static String value(String[] args, int index) {
+        if (index >= args.length) throw new IllegalArgumentException("Не указано значение для " + args[index - 1]);
+        return args[index];
+    }
+
+    private int usage(String error) {
+        System.err.println(error);
+        System.err.println("Использование: --update-only | --verify | --launch --nick <ник> | --serve | --make-patch <старый> <новый> <патч> [--ram <ГБ>] [--jvm-preset <профиль>] [--game-dir <папка>]");
+        emit("result", "\"ok\":false,\"error\":" + LaunchReport.quote(error));
+        return EXIT_USAGE;
+    }
+
+    private void emitResult(LauncherEngine engine, boolean ok, String error) {
+        StringBuilder fields = new StringBuilder("\"ok\":").append(ok);
+        if (error != null) fields.append(",\"error\":").append(LaunchReport.quote(error));
+        LaunchReport report = engine.lastReport();
+        if (report != null) fields.append(",\"report\":").append(report.toJson(ok ? "ok" : "error", error));
+        emit("result", fields.toString());
+    }
+
+    private void emit(String event, String fields) {
+        events.println("{\"event\":\"" + event + "\"," + fields + "}");
+    }
+
+    /** Тот же снимок, что показывает окно, но строкой JSON. */
+    private final class JsonProgressSink implements ProgressBus.Sink {
+        @Override
+        public void show(ProgressBus.Snapshot snapshot) {
+            emit("progress", "\"label\":" + LaunchReport.quote(snapshot.label())
+                    + ",\"unit\":\"" + snapshot.unit().name().toLowerCase(Locale.ROOT) + "\""
+                    + ",\"done\":" + snapshot.done()
+                    + ",\"total\":" + snapshot.total()
+                    + ",\"ratePerSecond\":" + Math.max(0, Math.round(snapshot.ratePerSecond()))
+                    + ",\"etaSeconds\":" + snapshot.etaSeconds());
+        }
+
+        @Override
+        public void hide() {
+        }
+    }
+}
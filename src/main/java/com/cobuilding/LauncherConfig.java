@@ -0,0 +1,66 @@
+package com.cobuilding;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Необязательные настройки лаунчера из {@code launcher.properties} в папке клиента.
+ * Файла может не быть вовсе — тогда для всех ключей берутся значения по умолчанию.
+ */
+final class LauncherConfig {
+
+    static final String FILE_NAME = "launcher.properties";
+
+    private final Properties props;
+
+    private LauncherConfig(Properties props) {
+        this.props = props;
+    }
+
+    static LauncherConfig load(Path gameDir) {
+        Properties props = new Properties();
+        Path file = gameDir.resolve(FILE_NAME);
+        if (Files.exists(file)) {
+            try (Reader reader = Files.newBufferedReader(file)) {
+                props.load(reader);
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Не удалось прочитать " + FILE_NAME + ", используются настройки по умолчанию: " + e.getMessage());
+                props.clear();
+            }
+        }
+        return new LauncherConfig(props);
+    }
+
+    String getString(String key, String defaultValue) {
+        String value = props.getProperty(key);
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+
+    long getLong(String key, long defaultValue) {
+        String value = props.getProperty(key);
+        if (value == null || value.isBlank()) return defaultValue;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Некорректное значение " + key + "=" + value + ", используется " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    boolean getBoolean(String key, boolean defaultValue) {
+        String value = props.getProperty(key);
+        return value == null || value.isBlank() ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+
+    /** Список через запятую; пустые элементы отбрасываются. */
+    List<String> getList(String key) {
+        String value = props.getProperty(key);
+        if (value == null || value.isBlank()) return List.of();
+        return Arrays.stream(value.split(",")).map(String::trim).filter(item -> !item.isEmpty()).toList();
+    }
+}
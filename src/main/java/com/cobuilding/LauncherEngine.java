@@ -0,0 +1,1517 @@
+package com.cobuilding;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.KeyManagementException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Установка, обновление, проверка и запуск клиента без привязки к интерфейсу.
+ * Окно лаунчера и режим командной строки ({@link LauncherCli}) отличаются только
+ * тем, куда уходят статус и прогресс.
+ */
+final class LauncherEngine {
+
+
+    // --- НАСТРОЙКИ GITHUB ---
+    private static final String GITHUB_USERNAME = "rakit1";
+    private static final String GITHUB_REPO = "cobuildingsborka";
+    private static final String CLIENT_VERSION_URL = "https://raw.githubusercontent.com/" + GITHUB_USERNAME + "/" + GITHUB_REPO + "/main/latest_version.txt";
+    private static final String CLIENT_DOWNLOAD_URL_TEMPLATE = "https://github.com/" + GITHUB_USERNAME + "/" + GITHUB_REPO + "/releases/download/%s/client.zip";
+    private static final String CLIENT_CHECKSUM_URL = "https://raw.githubusercontent.com/" + GITHUB_USERNAME + "/" + GITHUB_REPO + "/main/checksums.txt";
+    private static final String CLIENT_MANIFEST_URL_TEMPLATE = "https://github.com/" + GITHUB_USERNAME + "/" + GITHUB_REPO + "/releases/download/%s/manifest.txt";
+    private static final String CLIENT_PATCH_INDEX_URL_TEMPLATE = "https://github.com/" + GITHUB_USERNAME + "/" + GITHUB_REPO + "/releases/download/%s/patches.txt";
+    private static final String CLIENT_RELEASE_ASSET_URL_TEMPLATE = "https://github.com/" + GITHUB_USERNAME + "/" + GITHUB_REPO + "/releases/download/%s/%s";
+    private static final String CLIENT_FILE_URL_TEMPLATE = "https://raw.githubusercontent.com/" + GITHUB_USERNAME + "/" + GITHUB_REPO + "/%s/client/%s";
+
+    // --- ОСТАЛЬНЫЕ НАСТРОЙКИ ---
+    private static final String GAME_DIRECTORY_NAME = ".aurora-client";
+    private static final String JAVA_DIRECTORY_NAME = "runtime";
+    private static final String JAVA_SELECTION_FILE_NAME = "java_runtime.properties";
+    private static final String DOWNLOADS_DIRECTORY_NAME = "downloads";
+    private static final String JAVA_RUNTIME_URL = "https://github.com/rakit1/cobuildingsborka/releases/download/Java/Java.zip";
+    private static final String CLIENT_ARCHIVE_NAME = "client-backup.zip";
+    private static final String MANIFEST_FILE_NAME = "manifest.txt";
+    private static final String BACKUP_CHECKSUM_FILE_NAME = "backup_checksum.txt";
+    private static final String INTEGRITY_INDEX_FILE_NAME = "integrity-index.txt";
+    private static final String HTTP_CACHE_DIRECTORY_NAME = "http-cache";
+    // Повторный запуск в течение этого времени не ходит в сеть за версией и хэшами
+    private static final long DEFAULT_METADATA_TTL_SECONDS = 60;
+    private static final long DEFAULT_PREFETCH_INTERVAL_MINUTES = 30;
+    private static final long PREFETCH_INITIAL_DELAY_SECONDS = 15;
+    private static final long PEER_DISCOVERY_TTL_NANOS = TimeUnit.SECONDS.toNanos(60);
+    private static final String JAVA_ARCHIVE_NAME = "Java.zip";
+    // Ключ архива Java в checksums.txt, как у релиза на GitHub
+    private static final String JAVA_CHECKSUM_KEY = "Java";
+
+    // Если изменилось больше этой доли клиента, дешевле скачать client.zip целиком
+    private static final double DELTA_MAX_FRACTION = 0.6;
+    private static final int DELTA_DOWNLOAD_THREADS = 4;
+    private static final int DEFAULT_ASSET_THREADS = 8;
+    private static final long DEFAULT_GAME_LOG_MAX_MB = 16;
+    private static final long DEFAULT_GAME_SAMPLE_SECONDS = 3;
+    // Ошибка в аргументах JVM или classpath роняет игру в первые секунды
+    private static final Duration GAME_ALIVE_GRACE = Duration.ofSeconds(3);
+    private static final int DOWNLOAD_SEGMENTS = 6;
+    private static final int HASH_THREADS = Runtime.getRuntime().availableProcessors();
+    // Удаление упирается в диск, а не в процессор; больше потоков HDD только мешает
+    private static final int DELETE_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+    private static final int MIGRATION_THREADS = 4;
+    private static final long PROGRESS_INTERVAL_MILLIS = 100;
+
+    private static final Set<String> PRESERVED_FILES = Set.of(
+            "saves", "resourcepacks", "shaderpacks", "screenshots", "mods",
+            "options.txt", "servers.dat", "logs", "runtime",
+            "nickname.txt", "current_version.txt", "manifest.txt", "ram.txt", "jvm_preset.txt", JAVA_SELECTION_FILE_NAME,
+            "client-backup.zip", "backup_version.txt", "backup_checksum.txt", "downloads",
+            "http-cache", "launcher.properties", "slots", "trash", AssetStore.DIRECTORY_NAME,
+            // Состояние лаунчера, которое переживает смену версии: индекс сверяет mtime, архив классов — свой отпечаток
+            INTEGRITY_INDEX_FILE_NAME, ClassDataSharing.DIRECTORY_NAME
+    );
+
+    // Ресурсы проверяет и докачивает AssetStore, их отсутствие не делает клиент поврежденным
+    private static final List<String> CORE_DIRECTORIES = List.of("libraries", "versions");
+
+    /** Получает короткие сообщения о ходе работы: окно показывает их в строке статуса. */
+    interface StatusListener {
+        void onStatus(String text);
+    }
+
+    private static final Path CONFIG_FILE_PATH = Paths.get(System.getProperty("user.home"), ".aurora-launcher-config.txt");
+
+    private static final HttpClient httpClient;
+    static {
+        try {
+            SSLContext sslContext = SSLContext.getInstance("TLSv1.2");
+            sslContext.init(null, null, null);
+            httpClient = HttpClient.newBuilder()
+                    .sslContext(sslContext)
+                    .followRedirects(HttpClient.Redirect.ALWAYS)
+                    .build();
+        } catch (NoSuchAlgorithmException | KeyManagementException e) {
+            throw new RuntimeException("Критическая ошибка: не удалось инициализировать HttpClient для лаунчера", e);
+        }
+    }
+
+    private static final SegmentedDownloader segmentedDownloader =
+            new SegmentedDownloader(httpClient, "AuroraLauncher/1.0", DOWNLOAD_SEGMENTS);
+    private static final ZipExtractor zipExtractor =
+            new ZipExtractor(Math.min(8, Runtime.getRuntime().availableProcessors()));
+
+    private final Path gameDirectoryPath;
+    private final Path javaDirectoryPath;
+    private final StatusListener statusListener;
+    private final ProgressBus progressBus;
+    private final LauncherConfig config;
+    private final MetadataCache metadataCache;
+    private final InstallSlots installSlots;
+    private final TreeDeleter treeDeleter;
+    private final JavaRuntimes javaRuntimes;
+    private volatile LaunchReport report;
+    private volatile LaunchReport lastReport;
+    private volatile String javaInstallFailure;
+    private volatile List<String> lanPeers = List.of();
+    private volatile long lanPeersDiscoveredAt;
+    private final Set<String> failedPeers = ConcurrentHashMap.newKeySet();
+    private volatile ClientManifest servedManifest;
+    private volatile String servedManifestVersion;
+
+    // Фоновая подготовка обновления и запуск не должны трогать файлы клиента одновременно
+    private final ReentrantLock updateLock = new ReentrantLock();
+    private volatile boolean launchInProgress;
+    private volatile Thread prefetchWorker;
+    private final ScheduledExecutorService prefetchScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "update-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    LauncherEngine(Path gameDirectoryPath, StatusListener statusListener, ProgressBus.Sink progressSink) {
+        this.gameDirectoryPath = gameDirectoryPath;
+        this.javaDirectoryPath = gameDirectoryPath.resolve(JAVA_DIRECTORY_NAME);
+        this.statusListener = statusListener;
+        this.progressBus = new ProgressBus(progressSink, PROGRESS_INTERVAL_MILLIS);
+        this.config = LauncherConfig.load(gameDirectoryPath);
+        this.metadataCache = new MetadataCache(httpClient, "AuroraLauncher/1.0", gameDirectoryPath.resolve(HTTP_CACHE_DIRECTORY_NAME),
+                Duration.ofSeconds(Math.max(0, config.getLong("metadata.ttlSeconds", DEFAULT_METADATA_TTL_SECONDS))));
+        this.treeDeleter = new TreeDeleter(gameDirectoryPath.resolve(TreeDeleter.TRASH_DIRECTORY_NAME), DELETE_THREADS);
+        treeDeleter.purgeTrashLater();
+        this.installSlots = new InstallSlots(gameDirectoryPath, PRESERVED_FILES, treeDeleter);
+        recoverSlotSwitch();
+        String runtimeCache = config.getString("runtime.cacheDir", "");
+        this.javaRuntimes = new JavaRuntimes(runtimeCache.isBlank() ? JavaRuntimes.defaultCacheDir() : Paths.get(runtimeCache), treeDeleter);
+    }
+
+    /** Папка клиента из сохраненной настройки или по умолчанию в домашней папке. */
+    static Path resolveGameDirectory() {
+        Path defaultConfigPath = Paths.get(System.getProperty("user.home"));
+        if (Files.exists(CONFIG_FILE_PATH)) {
+            try {
+                String pathStr = Files.readString(CONFIG_FILE_PATH).trim();
+                if (!pathStr.isEmpty()) {
+                    return Paths.get(pathStr).resolve(GAME_DIRECTORY_NAME);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return defaultConfigPath.resolve(GAME_DIRECTORY_NAME);
+    }
+
+    static Path gameDirectoryIn(Path basePath) {
+        return basePath.resolve(GAME_DIRECTORY_NAME);
+    }
+
+    Path gameDirectory() {
+        return gameDirectoryPath;
+    }
+
+    /** Включает фоновую подготовку обновлений, пока лаунчер открыт и простаивает. */
+    void schedulePrefetch() {
+        long prefetchMinutes = config.getLong("prefetch.intervalMinutes", DEFAULT_PREFETCH_INTERVAL_MINUTES);
+        if (prefetchMinutes > 0) {
+            prefetchScheduler.scheduleWithFixedDelay(this::prefetchUpdate, PREFETCH_INITIAL_DELAY_SECONDS,
+                    TimeUnit.MINUTES.toSeconds(prefetchMinutes), TimeUnit.SECONDS);
+        }
+    }
+
+    /** Начинает раздачу файлов в локальной сети, если она включена в {@code peer.serve}. */
+    void startPeerServingIfEnabled() {
+        if (!config.getBoolean("peer.serve", false)) return;
+        try {
+            servePeers();
+        } catch (IOException e) {
+            System.err.println("Не удалось начать раздачу в локальной сети: " + e.getMessage());
+        }
+    }
+
+    /** Раздает проверенные архивы и файлы клиента другим лаунчерам, пока возвращенный сервер не закрыт. */
+    LanPeers servePeers() throws IOException {
+        int port = (int) config.getLong("peer.port", LanPeers.DEFAULT_PORT);
+        return LanPeers.serve(new PeerCatalog(), port, config.getBoolean("peer.multicast", false));
+    }
+
+    /**
+     * Выполняет действие с файлами клиента: фоновая подготовка на это время
+     * останавливается, а время этапов дописывается в журнал производительности.
+     */
+    <T> T session(String mode, TaskGroup.Task<T> action) throws Exception {
+        pauseBackgroundUpdate();
+        LaunchReport launchReport = new LaunchReport();
+        launchReport.attribute("mode", mode);
+        report = launchReport;
+        lastReport = launchReport;
+        String failure = null;
+        try {
+            return action.run();
+        } catch (Exception e) {
+            failure = String.valueOf(e.getMessage());
+            throw e;
+        } finally {
+            report = null;
+            launchReport.append(gameDirectoryPath.resolve("logs"), failure == null ? "ok" : "error", failure);
+            resumeBackgroundUpdate();
+        }
+    }
+
+    /** Отчет последнего {@link #session}, в том числе завершившегося ошибкой. */
+    LaunchReport lastReport() {
+        return lastReport;
+    }
+
+    /** Доводит клиент и Java до актуального и целого состояния; вызывается внутри {@link #session}. */
+    void update() throws IOException, InterruptedException {
+        try (TaskGroup stages = new TaskGroup()) {
+            // Сеть и Java не зависят от состояния файлов клиента, поэтому стартуют до проверки целостности
+            TaskGroup.Stage<String> versionStage = stages.fork("проверка версии", this::fetchRemoteVersion);
+            TaskGroup.Stage<String> checksumsStage = stages.fork("контрольные суммы", this::fetchChecksums);
+            // Ошибка Java возвращается, а не бросается: иначе группа отменила бы и обновление клиента
+            TaskGroup.Stage<IOException> javaStage = isJavaDownloaded() ? null : stages.fork("загрузка Java", () -> {
+                try {
+                    downloadJava(checksumsStage.join());
+                    return null;
+                } catch (IOException e) {
+                    return e;
+                }
+            });
+
+            repairInstallation(false);
+
+            updateStatus("Проверка обновлений...");
+            String remoteVersion = versionStage.join();
+            String localVersion = loadLocalVersion();
+            attribute("localVersion", localVersion);
+            attribute("remoteVersion", remoteVersion);
+
+            boolean needsUpdate = !remoteVersion.equalsIgnoreCase(localVersion) || "damaged".equals(localVersion) || localVersion.isEmpty();
+            InstallSlots.Slot staged = installSlots.staged();
+
+            if (needsUpdate && staged != null && staged.appliesTo(remoteVersion, localVersion)) {
+                attribute("update", "slot");
+                switchToStagedSlot(staged, localVersion);
+                updateStatus("Клиент обновлен до версии " + remoteVersion + "!");
+            } else if (needsUpdate && tryDeltaUpdate(localVersion, remoteVersion)) {
+                attribute("update", "delta");
+                updateStatus("Клиент обновлен до версии " + remoteVersion + "!");
+            } else if (needsUpdate) {
+                attribute("update", "full");
+                updateStatus("Скачивание версии " + remoteVersion + "...");
+                // Постоянное имя, чтобы после обрыва или перезапуска докачать тот же файл
+                Path tempZipPath = prepareDownloadPath("client-" + remoteVersion + ".zip", "client-");
+                List<String> downloadUrls = clientArchiveUrls(remoteVersion);
+
+                try {
+                    String archiveHash;
+                    String checksums = checksumsStage.join();
+                    String expectedHash = checksums == null ? null : getChecksumForVersion(checksums, remoteVersion);
+                    try (LaunchReport.Phase download = phase("download");
+                         ProgressBus.Operation progress = progressBus.start("Скачивание обновления", ProgressBus.Unit.BYTES)) {
+                        archiveHash = downloadWithPeers(downloadUrls, peerUrls(peer -> LanPeers.clientArchiveUrl(peer, remoteVersion)),
+                                tempZipPath, expectedHash, progress);
+                        download.bytes(Files.size(tempZipPath));
+                    }
+                    boolean archiveChecked;
+                    try (LaunchReport.Phase ignored = phase("verify")) {
+                        archiveChecked = verifyDownloadedClient(tempZipPath, archiveHash, remoteVersion, checksums);
+                    }
+                    // Проверенный архив сразу становится backup, и распаковываем уже его
+                    Path backupPath;
+                    try (LaunchReport.Phase ignored = phase("backup")) {
+                        backupPath = saveBackupArchive(tempZipPath, remoteVersion, archiveHash);
+                    }
+                    updateStatus("Установка новой версии...");
+                    try (LaunchReport.Phase ignored = phase("clean")) {
+                        cleanInstallDirectory();
+                    }
+                    unzip(backupPath, gameDirectoryPath);
+                    try (LaunchReport.Phase ignored = phase("manifest")) {
+                        saveRemoteManifest(remoteVersion, archiveChecked);
+                    }
+                    saveLocalVersion(remoteVersion);
+                    updateStatus("Клиент обновлен до версии " + remoteVersion + "!");
+                } catch (IOException e) {
+                    Files.deleteIfExists(tempZipPath);
+                    throw new IOException("Не удалось скачать обновление: " + e.getMessage(), e);
+                }
+            } else {
+                attribute("update", "none");
+                updateStatus("Версия " + localVersion + " актуальна.");
+            }
+            // Неподошедший слот собран от другой версии и больше не пригодится
+            installSlots.discard(staged);
+
+            syncAssets(false);
+
+            if (javaStage != null) {
+                if (!javaStage.isDone()) updateStatus("Завершаем загрузку Java...");
+                IOException javaFailure;
+                try (LaunchReport.Phase ignored = phase("java-wait")) {
+                    javaFailure = javaStage.join();
+                }
+                // Клиент при этом обновлен; без Java запуск сам сообщит, что ее нет
+                javaInstallFailure = javaFailure == null ? null : javaFailure.getMessage();
+                if (javaFailure != null) System.err.println("Java не установлена: " + javaFailure.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Проверяет файлы клиента по манифесту и чинит поврежденные, а если это не вышло —
+     * откатывается на предыдущую версию или backup.
+     *
+     * @param deep перечитать и пересчитать хэши всех файлов, не доверяя индексу
+     * @return false, если клиент поврежден и его нужно переустановить целиком
+     */
+    boolean repairInstallation(boolean deep) {
+        updateStatus("Проверка целостности клиента...");
+        List<String> damagedFiles = findDamagedFiles(deep);
+        boolean repaired = true;
+        if (damagedFiles != null && !damagedFiles.isEmpty()) {
+            try (LaunchReport.Phase ignored = phase("repair").files(damagedFiles.size())) {
+                repaired = repairDamagedFiles(damagedFiles);
+            }
+        }
+        if (repaired && isClientValid()) return !deep || syncAssets(true);
+        updateStatus("Обнаружены поврежденные файлы. Восстановление...");
+        boolean restored;
+        try (LaunchReport.Phase ignored = phase("restore")) {
+            restored = restoreFromBackup();
+        }
+        if (!restored) {
+            updateStatus("Backup не найден. Полная переустановка...");
+            saveLocalVersion("damaged");
+        }
+        return restored;
+    }
+
+    /**
+     * Переносит данные игрока и клиент в {@code newBasePath} и запоминает новый путь.
+     * Фоновая подготовка после успешного переноса не возобновляется: лаунчер перезапускается.
+     */
+    void migrateTo(Path newBasePath) throws IOException {
+        Path newGamePath = newBasePath.resolve(GAME_DIRECTORY_NAME);
+        // До паузы обновления: в ту же или вложенную папку переносить нечего, а удаление старой унесло бы сохранения
+        DirectoryMigrator.requireSeparate(gameDirectoryPath, newGamePath);
+        pauseBackgroundUpdate();
+        try {
+            updateStatus("Перемещение данных...");
+            // Корзина удаляется вместе со старой папкой, переносить ее незачем
+            List<String> migrated = PRESERVED_FILES.stream()
+                    .filter(name -> !name.equals(TreeDeleter.TRASH_DIRECTORY_NAME)).toList();
+            try (ProgressBus.Operation progress = progressBus.start("Перемещение данных", ProgressBus.Unit.BYTES)) {
+                new DirectoryMigrator(MIGRATION_THREADS, treeDeleter).migrate(gameDirectoryPath, newGamePath, migrated, progress);
+            }
+
+            updateStatus("Удаление остатков старого клиента...");
+            if (Files.exists(gameDirectoryPath)) {
+                deleteRecursively(gameDirectoryPath);
+            }
+
+            Files.writeString(CONFIG_FILE_PATH, newBasePath.toAbsolutePath().toString());
+        } catch (IOException e) {
+            // Уже перенесенные файлы при повторной попытке пропускаются
+            resumeBackgroundUpdate();
+            throw e;
+        }
+    }
+
+
+    void saveRamSetting(int ramValue) {
+        try {
+            Files.createDirectories(gameDirectoryPath);
+            Files.writeString(gameDirectoryPath.resolve("ram.txt"), String.valueOf(ramValue));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    int loadRamSetting() {
+        Path ramFile = gameDirectoryPath.resolve("ram.txt");
+        if (Files.exists(ramFile)) {
+            try {
+                return Integer.parseInt(Files.readString(ramFile).trim());
+            } catch (IOException | NumberFormatException e) {
+                return 4;
+            }
+        }
+        return 4;
+    }
+
+    void saveJvmPreset(JvmTuning.Preset preset) {
+        try {
+            Files.createDirectories(gameDirectoryPath);
+            Files.writeString(gameDirectoryPath.resolve("jvm_preset.txt"), preset.id);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    JvmTuning.Preset loadJvmPreset() {
+        try {
+            return JvmTuning.Preset.fromId(Files.readString(gameDirectoryPath.resolve("jvm_preset.txt")));
+        } catch (IOException | IllegalArgumentException e) {
+            return JvmTuning.Preset.AUTO;
+        }
+    }
+
+    /** @return сколько ГБ памяти можно отдать игре на этом компьютере, 0 — неизвестно */
+    int maxRamSettingGb() {
+        return JvmTuning.maxHeapGb(JvmTuning.Hardware.detect(null).physicalMemoryMb());
+    }
+
+    /**
+     * Компьютер и Java, под которые считается профиль JVM. Поиск Java может обходить
+     * папки установленных JDK, поэтому вызывается не из потока окна; найденная Java
+     * при этом не запоминается — запомнит ее запуск.
+     */
+    JvmTuning.Hardware detectHardware() {
+        JavaRuntimes.Installation java = findJava(false);
+        return JvmTuning.Hardware.detect(java != null ? java.home() : null);
+    }
+
+    private void pauseBackgroundUpdate() {
+        launchInProgress = true;
+        Thread worker = prefetchWorker;
+        if (worker != null) worker.interrupt();
+        updateLock.lock();
+    }
+
+    private void resumeBackgroundUpdate() {
+        updateLock.unlock();
+        launchInProgress = false;
+    }
+
+    /**
+     * Пока лаунчер простаивает, заранее скачивает следующую версию в слот {@code staged}:
+     * только изменившиеся файлы, если есть манифест, иначе архив целиком с распаковкой.
+     * Прерывается при нажатии «Играть»; скачанное докачивается в следующий раз.
+     */
+    private void prefetchUpdate() {
+        if (!updateLock.tryLock()) return;
+        prefetchWorker = Thread.currentThread();
+        try {
+            if (launchInProgress) return;
+            String localVersion = loadLocalVersion();
+            if (localVersion.isEmpty() || "damaged".equals(localVersion)) return;
+            String remoteVersion = metadataCache.get(CLIENT_VERSION_URL).trim();
+            InstallSlots.Slot staged = installSlots.staged();
+            if (staged != null && staged.appliesTo(remoteVersion, localVersion)) return;
+            installSlots.discard(staged);
+            if (remoteVersion.isEmpty() || remoteVersion.equalsIgnoreCase(localVersion)) return;
+
+            System.out.println("Фоновая подготовка версии " + remoteVersion + "...");
+            stageUpdate(localVersion, remoteVersion);
+            System.out.println("Версия " + remoteVersion + " подготовлена и установится при запуске");
+            if (!launchInProgress) updateStatus("Обновление " + remoteVersion + " загружено и установится при запуске");
+        } catch (InterruptedException | InterruptedIOException e) {
+            System.out.println("Фоновая подготовка обновления прервана");
+        } catch (Exception e) {
+            System.err.println("Фоновая подготовка обновления не удалась: " + e.getMessage());
+        } finally {
+            prefetchWorker = null;
+            Thread.interrupted();
+            updateLock.unlock();
+        }
+    }
+
+    private void stageUpdate(String localVersion, String remoteVersion) throws IOException, InterruptedException {
+        Path staging = installSlots.beginStaging();
+        ClientManifest installed = ClientManifest.load(gameDirectoryPath.resolve(MANIFEST_FILE_NAME));
+        ClientManifest remote = null;
+        try {
+            remote = ClientManifest.parse(downloadTextFile(String.format(CLIENT_MANIFEST_URL_TEMPLATE, remoteVersion)));
+        } catch (IOException e) {
+            System.out.println("Манифест версии " + remoteVersion + " недоступен, готовим архив целиком: " + e.getMessage());
+        }
+
+        if (installed != null && remote != null) {
+            ClientManifest.Delta delta = remote.diff(installed, gameDirectoryPath);
+            BinaryPatch.Index patches = loadPatchIndex(remoteVersion);
+            if (plannedDownloadSize(delta.toDownload(), installed, patches) <= remote.totalSize() * DELTA_MAX_FRACTION) {
+                downloadManifestEntries(delta.toDownload(), remoteVersion, InstallSlots.filesOf(staging), installed, patches, (done, total) -> {});
+                remote.save(InstallSlots.manifestOf(staging));
+                installSlots.commitStaging(remoteVersion, localVersion, false, null, clientOwned(delta.toDelete()));
+                return;
+            }
+        }
+
+        String expectedHash = getChecksumForVersion(metadataCache.get(CLIENT_CHECKSUM_URL), remoteVersion);
+        // Файлам полного слота переключение верит без перечитывания, так что архив без хэша
+        // остается обычной установке при запуске
+        if (expectedHash == null) throw new IOException("для версии " + remoteVersion + " не опубликован SHA-256");
+        Path zipPath = prepareDownloadPath("client-" + remoteVersion + ".zip", "client-");
+        String archiveHash = downloadWithPeers(clientArchiveUrls(remoteVersion),
+                peerUrls(peer -> LanPeers.clientArchiveUrl(peer, remoteVersion)), zipPath, expectedHash, (done, total) -> {});
+        if (!archiveHash.equalsIgnoreCase(expectedHash)) {
+            Files.deleteIfExists(zipPath);
+            throw new IOException("Архив версии " + remoteVersion + " не прошел проверку SHA-256");
+        }
+        zipExtractor.extract(zipPath, InstallSlots.filesOf(staging), (done, total) -> {});
+        Files.move(zipPath, InstallSlots.archiveOf(staging), StandardCopyOption.ATOMIC_MOVE);
+        if (remote != null) remote.save(InstallSlots.manifestOf(staging));
+        installSlots.commitStaging(remoteVersion, localVersion, true, archiveHash, List.of());
+    }
+
+    private void switchToStagedSlot(InstallSlots.Slot staged, String localVersion) throws IOException {
+        updateStatus("Переключение на версию " + staged.version() + "...");
+        List<String> installed;
+        try (LaunchReport.Phase switchPhase = phase("slot-switch")) {
+            installed = installSlots.switchTo(staged, localVersion);
+            switchPhase.files(installed.size());
+        }
+        storeLocalVersion(staged.version());
+        installSlots.finishSwitch();
+        if (staged.full() && staged.archiveSha256() != null && Files.exists(staged.archive())) {
+            saveBackupArchive(staged.archive(), staged.version(), staged.archiveSha256());
+        }
+        installSlots.discard(staged);
+        if (localVersion.isEmpty() || "damaged".equals(localVersion)) {
+            // Поврежденная установка не годится как цель для отката
+            installSlots.discard(installSlots.previous());
+        }
+
+        ClientManifest manifest = ClientManifest.load(gameDirectoryPath.resolve(MANIFEST_FILE_NAME));
+        if (manifest != null) {
+            Set<String> installedPaths = new HashSet<>(installed);
+            rememberVerifiedFiles(manifest.entries().stream().filter(entry -> installedPaths.contains(entry.path())).toList());
+        }
+    }
+
+    private String fetchRemoteVersion() throws IOException, InterruptedException {
+        String remoteVersion;
+        try (LaunchReport.Phase ignored = phase("metadata-version")) {
+            remoteVersion = metadataCache.get(CLIENT_VERSION_URL).trim();
+        }
+        if (remoteVersion.isEmpty()) {
+            throw new IOException("Не удалось получить версию клиента с GitHub.");
+        }
+        return remoteVersion;
+    }
+
+    /** @return содержимое checksums.txt или null, если его не удалось скачать */
+    private String fetchChecksums() throws InterruptedException {
+        try (LaunchReport.Phase ignored = phase("metadata-checksums")) {
+            return metadataCache.get(CLIENT_CHECKSUM_URL);
+        } catch (IOException e) {
+            // Нужен только при полной установке, так что ошибка всплывет при проверке архива
+            System.err.println("Не удалось скачать контрольные суммы: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private boolean isClientValid() {
+        for (String coreDir : CORE_DIRECTORIES) {
+            if (!Files.isDirectory(gameDirectoryPath.resolve(coreDir))) return false;
+        }
+        if (!Files.exists(gameDirectoryPath.resolve("current_version.txt"))) return false;
+        try {
+            return findFabricVersion() != null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /** @return поврежденные файлы по манифесту или null, если манифеста нет или проверка не удалась */
+    private List<String> findDamagedFiles(boolean deep) {
+        ClientManifest manifest = ClientManifest.load(gameDirectoryPath.resolve(MANIFEST_FILE_NAME));
+        if (manifest == null) return null;
+        manifest = manifest.withoutInstallOnce();
+
+        List<String> damaged;
+        try (ProgressBus.Operation progress = progressBus.start("Проверка файлов клиента", ProgressBus.Unit.FILES);
+             LaunchReport.Phase ignored = phase("integrity").files(manifest.entries().size())) {
+            IntegrityIndex index = IntegrityIndex.load(gameDirectoryPath.resolve(INTEGRITY_INDEX_FILE_NAME));
+            damaged = index.verify(manifest, gameDirectoryPath, deep, HASH_THREADS, progress);
+            index.save();
+        } catch (IOException e) {
+            System.err.println("Не удалось проверить файлы клиента: " + e.getMessage());
+            return null;
+        }
+        if (damaged.isEmpty()) return damaged;
+
+        // Статус пишется уже после завершения операции, чтобы его не перекрыл прогресс проверки
+        System.err.println("Повреждены или отсутствуют файлы клиента (" + damaged.size() + "):");
+        damaged.forEach(path -> System.err.println("  " + path));
+        String shown = String.join(", ", damaged.subList(0, Math.min(3, damaged.size())));
+        updateStatus("Повреждены файлы: " + shown + (damaged.size() > 3 ? " и еще " + (damaged.size() - 3) : ""));
+        return damaged;
+    }
+
+    /**
+     * Чинит только перечисленные файлы: сначала достает их из backup-архива, если он
+     * той же версии, что и установленный клиент, а чего там нет — докачивает по одному.
+     */
+    private boolean repairDamagedFiles(List<String> damagedPaths) {
+        ClientManifest manifest = ClientManifest.load(gameDirectoryPath.resolve(MANIFEST_FILE_NAME));
+        if (manifest == null) return false;
+        List<ClientManifest.Entry> damaged = damagedPaths.stream()
+                .filter(path -> !ClientManifest.isInstallOnce(path))
+                .map(manifest::get).filter(Objects::nonNull).toList();
+        String localVersion = loadLocalVersion();
+
+        updateStatus("Восстановление файлов: " + damaged.size() + "...");
+        try {
+            List<ClientManifest.Entry> remaining = damaged;
+            Path backupPath = gameDirectoryPath.resolve(CLIENT_ARCHIVE_NAME);
+            if (Files.exists(backupPath) && localVersion.equals(loadBackupVersion())) {
+                remaining = zipExtractor.extractVerified(backupPath, gameDirectoryPath, damaged);
+            }
+            if (!remaining.isEmpty()) {
+                if (localVersion.isEmpty() || "damaged".equals(localVersion)) return false;
+                updateStatus("Скачивание файлов: " + remaining.size() + "...");
+                downloadManifestEntries(remaining, localVersion, null, null);
+            }
+        } catch (IOException e) {
+            System.err.println("Не удалось восстановить файлы выборочно: " + e.getMessage());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        rememberVerifiedFiles(damaged);
+        LaunchClasspath.treeChanged(gameDirectoryPath);
+        updateStatus("Восстановлено файлов: " + damaged.size());
+        return true;
+    }
+
+    private String loadBackupVersion() {
+        try {
+            return Files.readString(gameDirectoryPath.resolve("backup_version.txt")).trim();
+        } catch (IOException e) {
+            return "unknown";
+        }
+    }
+
+    /** Записывает в индекс файлы, только что поставленные из проверенного источника. */
+    private void rememberVerifiedFiles(Collection<ClientManifest.Entry> installed) {
+        try {
+            IntegrityIndex index = IntegrityIndex.load(gameDirectoryPath.resolve(INTEGRITY_INDEX_FILE_NAME));
+            index.trust(installed, gameDirectoryPath);
+            index.save();
+        } catch (IOException e) {
+            System.err.println("Не удалось обновить индекс целостности: " + e.getMessage());
+        }
+    }
+
+    private Path saveBackupArchive(Path archivePath, String version, String sha256) throws IOException {
+        Files.createDirectories(gameDirectoryPath);
+        Path backupPath = gameDirectoryPath.resolve(CLIENT_ARCHIVE_NAME);
+        // downloads лежит в папке клиента, так что это переименование без копирования
+        try {
+            Files.move(archivePath, backupPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(archivePath, backupPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.writeString(gameDirectoryPath.resolve("backup_version.txt"), version);
+        Files.writeString(gameDirectoryPath.resolve(BACKUP_CHECKSUM_FILE_NAME), sha256);
+        return backupPath;
+    }
+
+    private boolean restoreFromBackup() {
+        try {
+            // Полный предыдущий слот возвращается переименованием, без распаковки архива
+            InstallSlots.Slot previous = installSlots.previous();
+            if (previous != null && previous.full()) {
+                updateStatus("Откат на версию " + previous.version() + "...");
+                String restoredVersion = installSlots.rollback(loadLocalVersion());
+                if (restoredVersion != null) {
+                    storeLocalVersion(restoredVersion);
+                    installSlots.finishSwitch();
+                    updateStatus("Клиент восстановлен (v" + restoredVersion + ")!");
+                    return true;
+                }
+            }
+
+            Path backupPath = gameDirectoryPath.resolve(CLIENT_ARCHIVE_NAME);
+            if (!Files.exists(backupPath)) return false;
+
+            String backupVersion = loadBackupVersion();
+
+            updateStatus("Восстановление из backup (v" + backupVersion + ")...");
+            cleanInstallDirectory();
+            unzip(backupPath, gameDirectoryPath);
+            // Манифест описывал прежнюю версию, после отката он неверен
+            Files.deleteIfExists(gameDirectoryPath.resolve(MANIFEST_FILE_NAME));
+            saveLocalVersion(backupVersion);
+            updateStatus("Клиент восстановлен из backup!");
+            return true;
+        } catch (IOException e) {
+            System.err.println("Ошибка при восстановлении из backup: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean tryDeltaUpdate(String localVersion, String remoteVersion) throws IOException, InterruptedException {
+        if (localVersion.isEmpty() || "damaged".equals(localVersion)) return false;
+        ClientManifest installed = ClientManifest.load(gameDirectoryPath.resolve(MANIFEST_FILE_NAME));
+        if (installed == null) return false;
+
+        ClientManifest remote;
+        try {
+            remote = ClientManifest.parse(downloadTextFile(String.format(CLIENT_MANIFEST_URL_TEMPLATE, remoteVersion)));
+        } catch (IOException e) {
+            System.out.println("Манифест версии " + remoteVersion + " недоступен, скачиваем архив целиком: " + e.getMessage());
+            return false;
+        }
+
+        ClientManifest.Delta delta;
+        try {
+            updateStatus("Поиск изменившихся файлов...");
+            try (LaunchReport.Phase ignored = phase("delta-diff").files(remote.entries().size())) {
+                delta = remote.diff(installed, gameDirectoryPath);
+            }
+            BinaryPatch.Index patches = delta.toDownload().isEmpty() ? BinaryPatch.Index.EMPTY : loadPatchIndex(remoteVersion);
+            long downloadSize = plannedDownloadSize(delta.toDownload(), installed, patches);
+            if (downloadSize > remote.totalSize() * DELTA_MAX_FRACTION) return false;
+
+            updateStatus("Обновление " + delta.toDownload().size() + " файлов до версии " + remoteVersion + "...");
+            try (LaunchReport.Phase ignored = phase("delta-download").bytes(downloadSize).files(delta.toDownload().size())) {
+                downloadManifestEntries(delta.toDownload(), remoteVersion, installed, patches);
+            }
+
+            Path root = gameDirectoryPath.toAbsolutePath().normalize();
+            for (String removed : clientOwned(delta.toDelete())) {
+                Files.deleteIfExists(ClientManifest.resolveSafely(root, removed));
+            }
+        } catch (IOException e) {
+            // Полная установка ниже все равно перезапишет частично обновленные файлы
+            System.err.println("Пофайловое обновление не удалось, скачиваем архив целиком: " + e.getMessage());
+            return false;
+        }
+
+        remote.save(gameDirectoryPath.resolve(MANIFEST_FILE_NAME));
+        rememberVerifiedFiles(delta.toDownload());
+        saveLocalVersion(remoteVersion);
+        return true;
+    }
+
+    private void downloadManifestEntries(List<ClientManifest.Entry> entries, String version, ClientManifest installed,
+                                         BinaryPatch.Index patches) throws IOException, InterruptedException {
+        if (entries.isEmpty()) return;
+        try (ProgressBus.Operation progress = progressBus.start("Скачивание изменений", ProgressBus.Unit.BYTES)) {
+            downloadManifestEntries(entries, version, gameDirectoryPath, installed, patches, progress);
+        }
+    }
+
+    /**
+     * @param installed манифест установленной версии: по нему ищутся патчи от старых файлов,
+     *                  null — патчи не применяются
+     */
+    private void downloadManifestEntries(List<ClientManifest.Entry> entries, String version, Path installDir,
+                                         ClientManifest installed, BinaryPatch.Index patches,
+                                         ProgressListener listener) throws IOException, InterruptedException {
+        if (entries.isEmpty()) return;
+        Path root = installDir.toAbsolutePath().normalize();
+        long totalBytes = entries.stream().mapToLong(ClientManifest.Entry::size).sum();
+        AtomicLong doneBytes = new AtomicLong();
+
+        ExecutorService executor = Executors.newFixedThreadPool(DELTA_DOWNLOAD_THREADS);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (ClientManifest.Entry entry : entries) {
+                futures.add(executor.submit(() -> {
+                    Path target = ClientManifest.resolveSafely(root, entry.path());
+                    if (!tryPatchEntry(entry, patchChain(entry, installed, patches), target)) {
+                        downloadManifestEntry(entry, version, target);
+                    }
+                    listener.onProgress(doneBytes.addAndGet(entry.size()), totalBytes);
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException io) throw io;
+                    throw new IOException("Не удалось скачать файл обновления", cause);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /** Патчи, опубликованные к версии; если их нет, измененные файлы качаются целиком. */
+    private BinaryPatch.Index loadPatchIndex(String version) throws InterruptedException {
+        try {
+            return BinaryPatch.Index.parse(downloadTextFile(String.format(CLIENT_PATCH_INDEX_URL_TEMPLATE, version)));
+        } catch (IOException e) {
+            System.out.println("Патчи к версии " + version + " недоступны: " + e.getMessage());
+            return BinaryPatch.Index.EMPTY;
+        }
+    }
+
+    /** @return цепочка патчей от установленного файла или пустой список, если файл выгоднее скачать целиком */
+    private List<BinaryPatch.Patch> patchChain(ClientManifest.Entry entry, ClientManifest installed, BinaryPatch.Index patches) {
+        if (installed == null || patches == null) return List.of();
+        ClientManifest.Entry base = installed.get(entry.path());
+        if (base == null) return List.of();
+        try {
+            Path source = ClientManifest.resolveSafely(gameDirectoryPath.toAbsolutePath().normalize(), entry.path());
+            if (!Files.isRegularFile(source) || Files.size(source) != base.size()) return List.of();
+        } catch (IOException e) {
+            return List.of();
+        }
+        return patches.chain(base.sha256(), entry.sha256(), entry.size());
+    }
+
+    private long plannedDownloadSize(List<ClientManifest.Entry> entries, ClientManifest installed, BinaryPatch.Index patches) {
+        long bytes = 0;
+        for (ClientManifest.Entry entry : entries) {
+            List<BinaryPatch.Patch> chain = patchChain(entry, installed, patches);
+            bytes += chain.isEmpty() ? entry.size() : chain.stream().mapToLong(BinaryPatch.Patch::size).sum();
+        }
+        return bytes;
+    }
+
+    /**
+     * Собирает новый файл из установленного цепочкой патчей. Каждое звено сверяется с
+     * хэшем из списка патчей, так что результат совпадает с файлом из манифеста.
+     *
+     * @return false, если патчей нет или они не подошли, и файл нужно качать целиком
+     */
+    private boolean tryPatchEntry(ClientManifest.Entry entry, List<BinaryPatch.Patch> chain, Path target) throws InterruptedException {
+        if (chain.isEmpty()) return false;
+        Path partPath = target.resolveSibling(target.getFileName() + ".part");
+        List<Path> intermediates = new ArrayList<>();
+        try {
+            Path source = ClientManifest.resolveSafely(gameDirectoryPath.toAbsolutePath().normalize(), entry.path());
+            Files.createDirectories(target.getParent());
+            for (int i = 0; i < chain.size(); i++) {
+                BinaryPatch.Patch patch = chain.get(i);
+                Path output = partPath;
+                if (i < chain.size() - 1) {
+                    output = target.resolveSibling(target.getFileName() + ".patch" + i);
+                    intermediates.add(output);
+                }
+                String url = String.format(CLIENT_RELEASE_ASSET_URL_TEMPLATE, patch.tag(), encodeUrlPath(patch.asset()));
+                HttpRequest request = HttpRequest.newBuilder().uri(URI.create(url)).header("User-Agent", "AuroraLauncher/1.0").build();
+                HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+                String sha256;
+                try (InputStream in = response.body()) {
+                    if (response.statusCode() != 200) throw new IOException("Сервер ответил с ошибкой " + response.statusCode() + " для " + patch.asset());
+                    sha256 = BinaryPatch.apply(source, in, output);
+                }
+                if (!sha256.equalsIgnoreCase(patch.toSha256())) throw new IOException("Патч " + patch.asset() + " собрал не тот файл");
+                source = output;
+            }
+            if (Files.size(partPath) != entry.size()) throw new IOException("Размер после патча не совпадает с манифестом");
+            Files.move(partPath, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Патч для " + entry.path() + " не применился, качаем файл целиком: " + e.getMessage());
+            return false;
+        } finally {
+            try {
+                Files.deleteIfExists(partPath);
+                for (Path intermediate : intermediates) Files.deleteIfExists(intermediate);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /** Сначала пробует раздающих в сети, файл с них проверяется по манифесту так же, как с GitHub. */
+    private void downloadManifestEntry(ClientManifest.Entry entry, String version, Path target) throws IOException, InterruptedException {
+        Files.createDirectories(target.getParent());
+        for (String peer : lanPeers()) {
+            if (failedPeers.contains(peer)) continue;
+            try {
+                fetchManifestEntry(entry, LanPeers.clientFileUrl(peer, version, entry.path()), target);
+                return;
+            } catch (IOException e) {
+                // Раздающий без этой версии или с испорченным файлом дальше в этом запуске не спрашивается
+                if (failedPeers.add(peer)) System.err.println("Раздающий " + peer + " пропущен: " + e.getMessage());
+            }
+        }
+        fetchManifestEntry(entry, String.format(CLIENT_FILE_URL_TEMPLATE, version, encodeUrlPath(entry.path())), target);
+    }
+
+    private void fetchManifestEntry(ClientManifest.Entry entry, String url, Path target) throws IOException, InterruptedException {
+        Path partPath = target.resolveSibling(target.getFileName() + ".part");
+        try {
+            HttpRequest request = HttpRequest.newBuilder().uri(URI.create(url)).header("User-Agent", "AuroraLauncher/1.0").build();
+            HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            MessageDigest md = Checksums.newSha256();
+            try (InputStream in = new DigestInputStream(response.body(), md)) {
+                if (response.statusCode() != 200) throw new IOException("Сервер ответил с ошибкой " + response.statusCode() + " для " + entry.path());
+                Files.copy(in, partPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+            if (Files.size(partPath) != entry.size() || !Checksums.toHex(md.digest()).equalsIgnoreCase(entry.sha256())) {
+                throw new IOException("Файл " + entry.path() + " поврежден при скачивании");
+            }
+            Files.move(partPath, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(partPath);
+        }
+    }
+
+    /**
+     * @param archiveChecked архив сошелся с опубликованным SHA-256, и распакованным файлам
+     *                       можно верить без перечитывания; иначе они в индекс не попадают
+     *                       и будут перехэшированы следующей проверкой
+     */
+    private void saveRemoteManifest(String version, boolean archiveChecked) {
+        try {
+            ClientManifest manifest = ClientManifest.parse(downloadTextFile(String.format(CLIENT_MANIFEST_URL_TEMPLATE, version)));
+            manifest.save(gameDirectoryPath.resolve(MANIFEST_FILE_NAME));
+            if (archiveChecked) rememberVerifiedFiles(manifest.entries());
+        } catch (IOException e) {
+            // Без манифеста следующее обновление просто пойдет через полный архив
+            System.out.println("Манифест версии " + version + " не сохранен: " + e.getMessage());
+            try { Files.deleteIfExists(gameDirectoryPath.resolve(MANIFEST_FILE_NAME)); } catch (IOException ignored) {}
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String encodeUrlPath(String path) {
+        return Arrays.stream(path.split("/"))
+                .map(segment -> URLEncoder.encode(segment, StandardCharsets.UTF_8).replace("+", "%20"))
+                .collect(Collectors.joining("/"));
+    }
+
+    /** @return false, если хэш версии не опубликован и архив принят без проверки */
+    private boolean verifyDownloadedClient(Path zipPath, String actualHash, String version, String checksums) throws IOException {
+        updateStatus("Проверка целостности скачанного файла...");
+        if (checksums == null) {
+            throw new IOException("Не удалось получить контрольные суммы для проверки архива.");
+        }
+        String expectedHash = getChecksumForVersion(checksums, version);
+        if (expectedHash == null) {
+            System.out.println("Предупреждение: хэш для версии " + version + " не найден, пропускаем проверку");
+            return false;
+        }
+        // Хэш уже посчитан во время скачивания, файл заново не читаем
+        if (!actualHash.equalsIgnoreCase(expectedHash)) {
+            Files.deleteIfExists(zipPath);
+            throw new IOException("Проверка целостности не пройдена! Файл поврежден.");
+        }
+        updateStatus("Проверка целостности пройдена");
+        return true;
+    }
+
+    private static String getChecksumForVersion(String checksumContent, String version) {
+        for (String line : checksumContent.split("\\R")) {
+            String[] parts = line.split(":");
+            if (parts.length >= 2 && parts[0].trim().equals(version)) {
+                return parts[1].trim();
+            }
+        }
+        return null;
+    }
+
+    private void cleanInstallDirectory() throws IOException {
+        if (!Files.exists(gameDirectoryPath)) {
+            Files.createDirectories(gameDirectoryPath);
+            return;
+        }
+        List<Path> stale;
+        try (Stream<Path> stream = Files.list(gameDirectoryPath)) {
+            stale = stream.filter(path -> !PRESERVED_FILES.contains(path.getFileName().toString())).toList();
+        }
+        // Старые файлы уезжают в корзину переименованием и удаляются в фоне, установка их не ждет
+        for (Path path : stale) {
+            try {
+                treeDeleter.discard(path);
+            } catch (IOException e) {
+                System.err.println("Не удалось удалить " + path + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void deleteRecursively(Path path) {
+        TreeDeleter.Result result;
+        try (ProgressBus.Operation progress = progressBus.start("Удаление старого клиента", ProgressBus.Unit.FILES)) {
+            result = treeDeleter.delete(path, progress);
+        }
+        if (!result.failed().isEmpty()) {
+            System.err.println("Не удалось удалить " + result.failed().size() + " путей в " + path);
+        }
+    }
+
+    private void unzip(Path zipFile, Path destDir) throws IOException {
+        try (ProgressBus.Operation progress = progressBus.start("Распаковка", ProgressBus.Unit.BYTES);
+             LaunchReport.Phase unzipPhase = phase("unzip")) {
+            AtomicLong unpacked = new AtomicLong();
+            zipExtractor.extract(zipFile, destDir, (extracted, total) -> {
+                progress.onProgress(extracted, total);
+                unpacked.set(extracted);
+            });
+            unzipPhase.bytes(unpacked.get());
+        }
+    }
+
+    private String downloadTextFile(String url) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create(url)).header("User-Agent", "AuroraLauncher/1.0").build();
+        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) throw new IOException("HTTP error: " + response.statusCode());
+        return response.body();
+    }
+
+    /**
+     * Запускает игру и сразу возвращает процесс, не дожидаясь его завершения.
+     *
+     * @param output куда направить вывод игры: командная строка пишет его в файл, а
+     *               {@link ProcessBuilder.Redirect#PIPE} оставляет его {@link GameSupervisor}
+     */
+    Process launch(String nickname, int ramGb, JvmTuning.Preset preset, ProcessBuilder.Redirect output) throws IOException {
+        JavaRuntimes.Installation java = findJava(true);
+        if (java == null) {
+            String reason = javaInstallFailure;
+            throw new IOException("Не найдена подходящая Java для игры" + (reason == null ? "" : ": " + reason));
+        }
+        attribute("java", java.describe());
+
+        LaunchClasspath.Spec launchSpec;
+        try (LaunchReport.Phase classpathPhase = phase("classpath")) {
+            launchSpec = LaunchClasspath.resolve(gameDirectoryPath, loadLocalVersion());
+            classpathPhase.files(launchSpec.classpath().size());
+        }
+        if (launchSpec.classpath().isEmpty()) throw new IOException("Не удалось построить classpath. Папка 'libraries' пуста?");
+        String fabricVersion = launchSpec.fabricVersion();
+        if (fabricVersion == null) throw new IOException("Не удалось найти версию Fabric в папке 'versions'");
+
+        JvmTuning.Profile profile = JvmTuning.build(preset, ramGb,
+                JvmTuning.Hardware.detect(java.home()));
+        System.out.println("Профиль JVM: " + profile.describe() + " " + profile.jvmArguments());
+        if (profile.warning() != null) updateStatus(profile.warning());
+        attribute("jvmPreset", profile.preset().id);
+        attribute("jvmArgs", String.join(" ", profile.jvmArguments()));
+        ClassDataSharing classDataSharing = prepareClassDataSharing(java.home(), launchSpec);
+
+        List<String> command = new ArrayList<>();
+        command.add(java.executable().toString());
+        command.addAll(profile.jvmArguments());
+        if (output == ProcessBuilder.Redirect.PIPE) command.addAll(GameSupervisor.JVM_ARGUMENTS);
+        if (classDataSharing != null) command.addAll(classDataSharing.jvmArguments());
+        command.addAll(Arrays.asList(
+                "@" + launchSpec.argFile().toAbsolutePath(),
+                launchSpec.mainClass(),
+                "--username", nickname,
+                "--version", fabricVersion,
+                "--gameDir", gameDirectoryPath.toAbsolutePath().toString(),
+                "--assetsDir", gameDirectoryPath.resolve("assets").toAbsolutePath().toString(),
+                "--assetIndex", AssetStore.resolveIndexId(gameDirectoryPath, fabricVersion),
+                "--uuid", "0",
+                "--accessToken", "0",
+                "--clientId", "",
+                "--xuid", "",
+                "--userType", "legacy",
+                "--versionType", "release"
+        ));
+
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
+        processBuilder.directory(gameDirectoryPath.toFile());
+        if (output == ProcessBuilder.Redirect.INHERIT) {
+            processBuilder.inheritIO();
+        } else {
+            processBuilder.redirectInput(ProcessBuilder.Redirect.INHERIT)
+                    .redirectErrorStream(true)
+                    .redirectOutput(output);
+        }
+        updateStatus("Запускаем Minecraft...");
+        try {
+            Process process;
+            try (LaunchReport.Phase ignored = phase("spawn")) {
+                process = processBuilder.start();
+            }
+            // Вывод в канал читает наблюдатель, он и отметит игру живой по первой строке
+            if (output != ProcessBuilder.Redirect.PIPE) markAliveAfterGrace(process);
+            if (classDataSharing != null) process.onExit().thenAccept(exited -> classDataSharing.onGameExit(exited.exitValue()));
+            return process;
+        } catch (IOException e) { throw new IOException("Не удалось запустить процесс игры.", e); }
+    }
+
+    /**
+     * Запускает игру под наблюдением лаунчера: вывод уходит в журнал {@code logs/game-output.log},
+     * а замеры ЦП и памяти — в listener. Из jpackage-приложения без этого вывод игры теряется.
+     */
+    GameSupervisor launchSupervised(String nickname, int ramGb, JvmTuning.Preset preset, GameSupervisor.Listener listener)
+            throws IOException {
+        Process process = launch(nickname, ramGb, preset, ProcessBuilder.Redirect.PIPE);
+        GameSupervisor supervisor;
+        try {
+            supervisor = GameSupervisor.start(process, gameDirectoryPath.resolve("logs"), gameLogMaxBytes(),
+                    Duration.ofSeconds(Math.max(1, config.getLong("game.sampleSeconds", DEFAULT_GAME_SAMPLE_SECONDS))), listener);
+        } catch (IOException e) {
+            // Невычитанный вывод рано или поздно остановит игру на записи в полный канал
+            process.destroy();
+            throw new IOException("Не удалось открыть журнал игры", e);
+        }
+        try {
+            // Молчаливая игра, пережившая первые секунды, тоже считается запущенной
+            if (supervisor.awaitGameOutput(GAME_ALIVE_GRACE) || process.isAlive()) markGameAlive();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return supervisor;
+    }
+
+    /**
+     * Отмечает игру живой, если процесс не завершился за {@link #GAME_ALIVE_GRACE}. Проверка идет
+     * в фоне, чтобы не задерживать запуск; отметка попадает в журнал, только если сессия еще идет.
+     */
+    private void markAliveAfterGrace(Process process) {
+        LaunchReport launchReport = report;
+        if (launchReport == null) return;
+        CompletableFuture.runAsync(() -> {
+            if (process.isAlive()) launchReport.mark("game-alive");
+        }, CompletableFuture.delayedExecutor(GAME_ALIVE_GRACE.toMillis(), TimeUnit.MILLISECONDS));
+    }
+
+    private void markGameAlive() {
+        LaunchReport launchReport = report;
+        if (launchReport != null) launchReport.mark("game-alive");
+    }
+
+    /** Предел размера журнала вывода игры из {@code game.logMaxMb}. */
+    long gameLogMaxBytes() {
+        return Math.max(1, config.getLong("game.logMaxMb", DEFAULT_GAME_LOG_MAX_MB)) * 1024 * 1024;
+    }
+
+    /** @return null, если архив классов выключен в {@code cds.enabled} или runtime его не поддерживает */
+    private ClassDataSharing prepareClassDataSharing(Path javaHome, LaunchClasspath.Spec launchSpec) {
+        if (!config.getBoolean("cds.enabled", true)) {
+            attribute("cds", "off");
+            return null;
+        }
+        try {
+            ClassDataSharing classDataSharing = ClassDataSharing.prepare(gameDirectoryPath, javaHome, launchSpec.classpath());
+            attribute("cds", classDataSharing == null ? "unsupported" : classDataSharing.dumping() ? "dump" : "use");
+            return classDataSharing;
+        } catch (IOException e) {
+            // Без архива игра запустится как раньше, только медленнее
+            System.err.println("Архив классов недоступен: " + e.getMessage());
+            attribute("cds", "error");
+            return null;
+        }
+    }
+
+    /**
+     * Сверяет объекты из индекса ресурсов установленной версии и докачивает недостающие.
+     * Без сети игра все равно запускается: Minecraft переживает отсутствие части звуков и текстур.
+     *
+     * @param deep пересчитать хэши, а не только сверить размеры
+     * @return false, если ресурсы проверить или докачать не удалось
+     */
+    private boolean syncAssets(boolean deep) {
+        String fabricVersion;
+        try {
+            fabricVersion = findFabricVersion();
+        } catch (IOException e) {
+            fabricVersion = null;
+        }
+        if (fabricVersion == null) return false;
+
+        AssetStore store = new AssetStore(gameDirectoryPath, httpClient,
+                withMirrors(AssetStore.OBJECT_URL_TEMPLATE, config.getList("mirrors.assets")),
+                (int) config.getLong("assets.threads", DEFAULT_ASSET_THREADS));
+        String indexId = AssetStore.resolveIndexId(gameDirectoryPath, fabricVersion);
+        attribute("assetIndex", indexId);
+        try {
+            store.ensureIndex(indexId, AssetStore.gameVersion(gameDirectoryPath, fabricVersion));
+            List<AssetStore.AssetObject> objects = store.loadIndex(indexId);
+            List<AssetStore.AssetObject> missing;
+            try (ProgressBus.Operation progress = progressBus.start("Проверка ресурсов", ProgressBus.Unit.FILES);
+                 LaunchReport.Phase ignored = phase("assets-verify").files(objects.size())) {
+                missing = store.findMissing(objects, deep, progress);
+            }
+            if (missing.isEmpty()) return true;
+
+            updateStatus("Скачивание ресурсов: " + missing.size() + "...");
+            long bytes = missing.stream().mapToLong(AssetStore.AssetObject::size).sum();
+            try (ProgressBus.Operation progress = progressBus.start("Скачивание ресурсов", ProgressBus.Unit.BYTES);
+                 LaunchReport.Phase ignored = phase("assets-download").bytes(bytes).files(missing.size())) {
+                store.fetch(missing, progress);
+            }
+            return true;
+        } catch (IOException e) {
+            System.err.println("Ресурсы игры не проверены: " + e.getMessage());
+            updateStatus("Не удалось проверить ресурсы игры: " + e.getMessage());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /** Пути из манифеста без ресурсов: объекты общие для версий, и их удалением занимается не обновление. */
+    private static List<String> clientOwned(List<String> paths) {
+        return paths.stream().filter(path -> !path.startsWith(AssetStore.DIRECTORY_NAME + "/")).toList();
+    }
+
+    private String findFabricVersion() throws IOException {
+        return LaunchClasspath.findFabricVersion(gameDirectoryPath);
+    }
+
+    private boolean isJavaDownloaded() {
+        return findJava(true) != null;
+    }
+
+    /**
+     * Идет параллельно с обновлением клиента; шина прогресса показывает последнюю
+     * начатую операцию, так что прогресс Java виден, когда клиенту уже нечего показать.
+     * Без опубликованного SHA-256 Java не ставится: runtime из общего кэша потом берут
+     * все папки клиента на компьютере.
+     *
+     * @param checksums уже скачанный checksums.txt или null, если его получить не удалось
+     */
+    private void downloadJava(String checksums) throws IOException, InterruptedException {
+        if (checksums == null) throw new IOException("Не удалось получить контрольную сумму Java, установка невозможна");
+        String expectedHash = getChecksumForVersion(checksums, JAVA_CHECKSUM_KEY);
+        if (expectedHash == null) throw new IOException("В списке контрольных сумм нет записи для Java, установка невозможна");
+
+        Path javaZip = prepareDownloadPath(JAVA_ARCHIVE_NAME, JAVA_ARCHIVE_NAME);
+        String archiveHash;
+        try (LaunchReport.Phase download = phase("java-download");
+             ProgressBus.Operation progress = progressBus.start("Скачивание Java", ProgressBus.Unit.BYTES)) {
+            archiveHash = downloadWithPeers(withMirrors(JAVA_RUNTIME_URL, config.getList("mirrors.java")),
+                    peerUrls(LanPeers::javaArchiveUrl), javaZip, expectedHash, progress);
+            download.bytes(Files.size(javaZip));
+        }
+        if (!archiveHash.equalsIgnoreCase(expectedHash)) {
+            Files.deleteIfExists(javaZip);
+            throw new IOException("Архив Java не прошел проверку SHA-256");
+        }
+        JavaRuntimes.Installation runtime;
+        try (ProgressBus.Operation progress = progressBus.start("Распаковка Java", ProgressBus.Unit.BYTES)) {
+            runtime = javaRuntimes.install(javaZip, expectedHash, zipExtractor, progress);
+        }
+        selectJava(runtime);
+        if (config.getBoolean("peer.serve", false)) {
+            // Раздающему архив еще понадобится, хэш рядом служит ETag
+            Files.writeString(javaZip.resolveSibling(JAVA_ARCHIVE_NAME + ".sha256"), archiveHash);
+        } else {
+            Files.delete(javaZip);
+        }
+    }
+
+    private Path prepareDownloadPath(String fileName, String stalePrefix) throws IOException {
+        Path downloadsDir = gameDirectoryPath.resolve(DOWNLOADS_DIRECTORY_NAME);
+        Files.createDirectories(downloadsDir);
+        // Недокачанные файлы прошлых версий больше не пригодятся
+        try (Stream<Path> stream = Files.list(downloadsDir)) {
+            for (Path stale : stream.filter(p -> {
+                String name = p.getFileName().toString();
+                return name.startsWith(stalePrefix) && !name.startsWith(fileName);
+            }).toList()) {
+                Files.deleteIfExists(stale);
+            }
+        }
+        return downloadsDir.resolve(fileName);
+    }
+
+    /** GitHub и зеркала из {@code mirrors.client}, где {@code %s} — версия клиента. */
+    private List<String> clientArchiveUrls(String version) {
+        List<String> templates = withMirrors(CLIENT_DOWNLOAD_URL_TEMPLATE, config.getList("mirrors.client"));
+        return templates.stream().map(template -> String.format(template, version)).toList();
+    }
+
+    /**
+     * Качает файл и возвращает его SHA-256, посчитанный на лету. Если известен ожидаемый SHA-256, сначала файл
+     * качается только с раздающих в сети, чтобы ни байта не шло через интернет; с зеркал он качается, лишь когда
+     * раздающие недоступны или их файл не сошелся.
+     */
+    private String downloadWithPeers(List<String> urls, List<String> peerUrls, Path target, String expectedHash,
+                                     ProgressListener listener) throws IOException, InterruptedException {
+        if (expectedHash != null && !peerUrls.isEmpty()) {
+            // Отдельное имя: недокачанный с зеркал .part и его состояние не перетираются
+            Path fromPeers = target.resolveSibling(target.getFileName() + ".lan");
+            try {
+                String hash = segmentedDownloader.download(peerUrls, fromPeers, listener);
+                if (hash.equalsIgnoreCase(expectedHash)) {
+                    Files.move(fromPeers, target, StandardCopyOption.REPLACE_EXISTING);
+                    return hash;
+                }
+                System.err.println("Файл с раздающих в сети не прошел проверку SHA-256, качаем с основного сервера");
+            } catch (IOException e) {
+                System.err.println("Раздающие в сети не отдали файл, качаем с основного сервера: " + e.getMessage());
+            } finally {
+                Files.deleteIfExists(fromPeers);
+                Files.deleteIfExists(fromPeers.resolveSibling(fromPeers.getFileName() + ".part"));
+                Files.deleteIfExists(fromPeers.resolveSibling(fromPeers.getFileName() + ".part.meta"));
+            }
+        }
+        return segmentedDownloader.download(urls, target, listener);
+    }
+
+    private List<String> peerUrls(java.util.function.Function<String, String> urlOf) {
+        return lanPeers().stream().filter(peer -> !failedPeers.contains(peer)).map(urlOf).toList();
+    }
+
+    /** Раздающие из {@code peer.addresses} и найденные multicast-запросом; ищутся не чаще раза в минуту. */
+    private List<String> lanPeers() {
+        List<String> configured = config.getList("peer.addresses");
+        boolean multicast = config.getBoolean("peer.multicast", false);
+        if (configured.isEmpty() && !multicast) return List.of();
+        synchronized (failedPeers) {
+            if (lanPeersDiscoveredAt == 0 || System.nanoTime() - lanPeersDiscoveredAt > PEER_DISCOVERY_TTL_NANOS) {
+                lanPeers = LanPeers.discover(configured, multicast);
+                lanPeersDiscoveredAt = System.nanoTime();
+                failedPeers.clear();
+                if (!lanPeers.isEmpty()) System.out.println("Раздающие в локальной сети: " + lanPeers);
+            }
+            return lanPeers;
+        }
+    }
+
+    private static List<String> withMirrors(String origin, List<String> mirrors) {
+        // Основной адрес всегда первый: по нему узнается недокачанный файл после перезапуска
+        List<String> urls = new ArrayList<>();
+        urls.add(origin);
+        mirrors.stream().filter(url -> !url.equals(origin)).forEach(urls::add);
+        return urls;
+    }
+
+    /**
+     * Java для игры: {@code runtime.home} из настроек, выбранная раньше, старая папка
+     * {@code runtime} клиента, общий кэш и, наконец, подходящий установленный JDK.
+     * Выбор запоминается, так что обычный запуск проверяет один файл.
+     *
+     * @param remember записать найденную Java в {@code java_runtime.properties}
+     * @return null, если Java нужно скачать
+     */
+    private JavaRuntimes.Installation findJava(boolean remember) {
+        String configuredHome = config.getString("runtime.home", "");
+        if (!configuredHome.isBlank()) {
+            JavaRuntimes.Installation configured = JavaRuntimes.describe(Paths.get(configuredHome), "configured");
+            if (configured != null) return configured;
+            System.err.println("В runtime.home не найдена Java: " + configuredHome);
+        }
+
+        int required = requiredJavaVersion();
+        Path selectionFile = gameDirectoryPath.resolve(JAVA_SELECTION_FILE_NAME);
+        // Скачанная лаунчером Java подходит, даже если она новее требуемой
+        JavaRuntimes.Installation runtime = JavaRuntimes.selected(selectionFile);
+        if (runtime != null && runtime.majorVersion() >= required) return runtime;
+
+        runtime = JavaRuntimes.describe(javaDirectoryPath, "local");
+        if (runtime == null || runtime.majorVersion() < required) runtime = javaRuntimes.findCached(required);
+        if (runtime == null && config.getBoolean("runtime.useInstalled", true)) runtime = JavaRuntimes.findInstalled(required);
+        if (runtime == null) return null;
+        if (remember) selectJava(runtime);
+        return runtime;
+    }
+
+    private void selectJava(JavaRuntimes.Installation runtime) {
+        System.out.println("Java для игры: " + runtime.describe());
+        try {
+            JavaRuntimes.select(gameDirectoryPath.resolve(JAVA_SELECTION_FILE_NAME), runtime);
+        } catch (IOException e) {
+            System.err.println("Не удалось запомнить выбранную Java: " + e.getMessage());
+        }
+    }
+
+    /** Основная версия Java из {@code runtime.javaVersion} или json установленной версии игры. */
+    private int requiredJavaVersion() {
+        long configured = config.getLong("runtime.javaVersion", 0);
+        if (configured > 0) return (int) configured;
+        try {
+            return JavaRuntimes.requiredMajorVersion(gameDirectoryPath, findFabricVersion());
+        } catch (IOException e) {
+            return JavaRuntimes.DEFAULT_MAJOR_VERSION;
+        }
+    }
+
+    private String loadLocalVersion() {
+        Path versionFile = gameDirectoryPath.resolve("current_version.txt");
+        if (Files.exists(versionFile)) {
+            try { return Files.readString(versionFile).trim(); } catch (IOException e) { return ""; }
+        }
+        return "";
+    }
+
+    private void saveLocalVersion(String version) {
+        try {
+            storeLocalVersion(version);
+        } catch (IOException e) { e.printStackTrace(); }
+    }
+
+    /** Смена версии всегда означает новые файлы клиента, поэтому здесь же обновляется отпечаток для classpath. */
+    private void storeLocalVersion(String version) throws IOException {
+        Files.createDirectories(gameDirectoryPath);
+        Files.writeString(gameDirectoryPath.resolve("current_version.txt"), version);
+        LaunchClasspath.treeChanged(gameDirectoryPath);
+    }
+
+    /** Откатывает оборванное переключение слота или записывает версию, если оно успело пройти. */
+    private void recoverSlotSwitch() {
+        try {
+            String switchedTo = installSlots.recoverSwitch();
+            if (switchedTo != null) {
+                storeLocalVersion(switchedTo);
+                installSlots.finishSwitch();
+                System.out.println("Завершено прерванное переключение на версию " + switchedTo);
+            }
+        } catch (IOException e) {
+            // Журнал остается, и слоты не тронет никто, пока разбор не удастся
+            System.err.println("Не удалось разобрать прерванное переключение версии: " + e.getMessage());
+        }
+    }
+
+    void saveNickname(String nickname) {
+        try {
+            Files.createDirectories(gameDirectoryPath);
+            Files.writeString(gameDirectoryPath.resolve("nickname.txt"), nickname);
+        } catch (IOException e) { e.printStackTrace(); }
+    }
+
+    String loadNickname() {
+        Path nicknameFile = gameDirectoryPath.resolve("nickname.txt");
+        if (Files.exists(nicknameFile)) {
+            try { return Files.readString(nicknameFile).trim(); } catch (IOException e) { return ""; }
+        }
+        return "";
+    }
+
+    private void updateStatus(String text) {
+        statusListener.onStatus(text);
+    }
+
+    /** Отдает только то, что лаунчер сам проверил: архивы с известным SHA-256 и файлы текущей версии из манифеста. */
+    private final class PeerCatalog implements LanPeers.Catalog {
+        @Override
+        public LanPeers.Artifact clientArchive(String version) {
+            Path backupPath = gameDirectoryPath.resolve(CLIENT_ARCHIVE_NAME);
+            if (!version.equals(loadBackupVersion()) || !Files.isRegularFile(backupPath)) return null;
+            String sha256 = readTrimmed(gameDirectoryPath.resolve(BACKUP_CHECKSUM_FILE_NAME));
+            return sha256.isEmpty() ? null : new LanPeers.Artifact(backupPath, sha256);
+        }
+
+        @Override
+        public LanPeers.Artifact javaArchive() {
+            Path javaZip = gameDirectoryPath.resolve(DOWNLOADS_DIRECTORY_NAME).resolve(JAVA_ARCHIVE_NAME);
+            String sha256 = readTrimmed(javaZip.resolveSibling(JAVA_ARCHIVE_NAME + ".sha256"));
+            return sha256.isEmpty() || !Files.isRegularFile(javaZip) ? null : new LanPeers.Artifact(javaZip, sha256);
+        }
+
+        @Override
+        public Path clientFile(String version, String path) {
+            String localVersion = loadLocalVersion();
+            if (!version.equals(localVersion)) return null;
+            ClientManifest manifest = servedManifest;
+            if (manifest == null || !localVersion.equals(servedManifestVersion)) {
+                manifest = ClientManifest.load(gameDirectoryPath.resolve(MANIFEST_FILE_NAME));
+                if (manifest == null) return null;
+                servedManifest = manifest;
+                servedManifestVersion = localVersion;
+            }
+            if (manifest.get(path) == null) return null;
+            try {
+                return ClientManifest.resolveSafely(gameDirectoryPath.toAbsolutePath().normalize(), path);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        private String readTrimmed(Path file) {
+            try {
+                return Files.exists(file) ? Files.readString(file).trim() : "";
+            } catch (IOException e) {
+                return "";
+            }
+        }
+    }
+
+    private void attribute(String key, String value) {
+        LaunchReport launchReport = report;
+        if (launchReport != null) launchReport.attribute(key, value);
+    }
+
+    /** Этап текущего запуска; вне запуска время просто никуда не записывается. */
+    private LaunchReport.Phase phase(String name) {
+        LaunchReport launchReport = report;
+        return (launchReport != null ? launchReport : new LaunchReport()).begin(name);
+    }
+}
@@ -0,0 +1,20 @@
+package com.cobuilding;
+
+import javafx.application.Application;
+
+/**
+ * Точка входа. Главный класс не наследует {@link Application}: иначе JavaFX поднимает
+ * графику еще до {@code main}, и режим командной строки не работал бы на машинах без экрана.
+ */
+public final class Main {
+
+    private Main() {}
+
+    public static void main(String[] args) {
+        if (LauncherCli.isCliInvocation(args)) {
+            LauncherCli.main(args);
+        } else {
+            Application.launch(HelloApplication.class, args);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.cobuilding;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Properties;
+
+/**
+ * Кэш небольших текстовых файлов с сервера (версия, контрольные суммы). Для каждого
+ * URL хранится тело ответа вместе с ETag и Last-Modified; повторный запрос идет
+ * условным, и 304 означает, что сохраненная копия актуальна. Пока не истек TTL,
+ * сеть не трогается вовсе, а если сервер недоступен, отдается последняя известная копия.
+ */
+final class MetadataCache {
+
+    private final HttpClient httpClient;
+    private final String userAgent;
+    private final Path cacheDir;
+    private final Duration ttl;
+
+    MetadataCache(HttpClient httpClient, String userAgent, Path cacheDir, Duration ttl) {
+        this.httpClient = httpClient;
+        this.userAgent = userAgent;
+        this.cacheDir = cacheDir;
+        this.ttl = ttl;
+    }
+
+    String get(String url) throws IOException, InterruptedException {
+        Path entryFile = cacheDir.resolve(Checksums.toHex(
+                Checksums.newSha256().digest(url.getBytes(StandardCharsets.UTF_8))) + ".properties");
+        Properties cached = load(entryFile, url);
+        long now = System.currentTimeMillis();
+        if (cached != null && now - Long.parseLong(cached.getProperty("checkedAt", "0")) < ttl.toMillis()) {
+            return cached.getProperty("body");
+        }
+
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(URI.create(url)).header("User-Agent", userAgent);
+        if (cached != null) {
+            String etag = cached.getProperty("etag");
+            String lastModified = cached.getProperty("lastModified");
+            if (etag != null) request.header("If-None-Match", etag);
+            if (lastModified != null) request.header("If-Modified-Since", lastModified);
+        }
+
+        HttpResponse<String> response;
+        try {
+            response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        } catch (IOException e) {
+            if (cached == null) throw e;
+            System.err.println("Сервер недоступен, используется сохраненная копия " + url + ": " + e);
+            return cached.getProperty("body");
+        }
+
+        if (response.statusCode() == 304 && cached != null) {
+            cached.setProperty("checkedAt", String.valueOf(now));
+            store(entryFile, cached);
+            return cached.getProperty("body");
+        }
+        if (response.statusCode() != 200) {
+            if (cached == null) throw new IOException("HTTP error: " + response.statusCode());
+            System.err.println("Сервер ответил " + response.statusCode() + ", используется сохраненная копия " + url);
+            return cached.getProperty("body");
+        }
+
+        Properties fresh = new Properties();
+        fresh.setProperty("url", url);
+        fresh.setProperty("body", response.body());
+        fresh.setProperty("checkedAt", String.valueOf(now));
+        response.headers().firstValue("ETag").ifPresent(etag -> fresh.setProperty("etag", etag));
+        response.headers().firstValue("Last-Modified").ifPresent(date -> fresh.setProperty("lastModified", date));
+        store(entryFile, fresh);
+        return response.body();
+    }
+
+    private static Properties load(Path entryFile, String url) {
+        if (!Files.exists(entryFile)) return null;
+        Properties props = new Properties();
+        try (Reader reader = Files.newBufferedReader(entryFile)) {
+            props.load(reader);
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+        // Защита от коллизии имен и обрезанных файлов
+        if (!url.equals(props.getProperty("url")) || props.getProperty("body") == null) return null;
+        try {
+            Long.parseLong(props.getProperty("checkedAt", "0"));
+        } catch (NumberFormatException e) {
+            props.setProperty("checkedAt", "0");
+        }
+        return props;
+    }
+
+    private void store(Path entryFile, Properties props) {
+        try {
+            Files.createDirectories(cacheDir);
+            Path tmp = Files.createTempFile(cacheDir, "entry", ".tmp");
+            try {
+                try (Writer writer = Files.newBufferedWriter(tmp)) {
+                    props.store(writer, null);
+                }
+                Files.move(tmp, entryFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (IOException e) {
+            // Кэш необязателен: без записи следующий запуск просто сходит в сеть
+            System.err.println("Не удалось сохранить кэш для " + props.getProperty("url") + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.cobuilding;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Зеркала одного файла для {@link SegmentedDownloader}. Перед скачиванием все зеркала
+ * параллельно опрашиваются коротким Range-запросом: замеряются задержка до заголовков
+ * и скорость, отбрасываются недоступные и те, у кого другой размер файла.
+ * <p>
+ * Каждый следующий диапазон берется с зеркала, где он, по оценке, закончится раньше
+ * всего с учетом уже идущих на него запросов, так что медленные зеркала работают,
+ * только когда быстрые загружены. Скорость уточняется по ходу скачивания. Зеркало,
+ * которое несколько раз подряд упало, выводится из работы, и его диапазоны
+ * докачиваются с других с того же места.
+ */
+final class MirrorPool {
+
+    private static final long PROBE_BYTES = 256 * 1024;
+    private static final Duration PROBE_TIMEOUT = Duration.ofSeconds(5);
+    private static final int MAX_CONSECUTIVE_FAILURES = 2;
+    // Доля нового замера в скорости зеркала
+    private static final double RATE_SMOOTHING = 0.3;
+    // Для ранжирования: за сколько зеркало отдаст кусок такого размера
+    private static final long RANK_CHUNK_BYTES = 4L * 1024 * 1024;
+    private static final Pattern CONTENT_RANGE_TOTAL = Pattern.compile("bytes\\s+\\d+-\\d+/(\\d+)");
+
+    static final class Mirror {
+        final String url;
+        final String validator;
+        final long total;
+        final long latencyNanos;
+        private double bytesPerSecond;
+        private int active;
+        private int failures;
+        private boolean retired;
+
+        private Mirror(String url, String validator, long total, long latencyNanos, double bytesPerSecond) {
+            this.url = url;
+            this.validator = validator;
+            this.total = total;
+            this.latencyNanos = latencyNanos;
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        private double estimatedSeconds(int extraRequests) {
+            double transfer = bytesPerSecond > 0 ? RANK_CHUNK_BYTES / bytesPerSecond : 0;
+            return (active + extraRequests) * (latencyNanos / 1e9 + transfer);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s (%d мс, %.1f МБ/с)", url, latencyNanos / 1_000_000, bytesPerSecond / (1024 * 1024));
+        }
+    }
+
+    private final List<Mirror> mirrors;
+    private final Mirror origin;
+    private final String fallbackUrl;
+
+    private MirrorPool(List<Mirror> mirrors, Mirror origin, String fallbackUrl) {
+        this.mirrors = mirrors;
+        this.origin = origin;
+        this.fallbackUrl = fallbackUrl;
+    }
+
+    /**
+     * Опрашивает зеркала. У единственного зеркала скорость не замеряется: выбирать не из
+     * чего, так что достаточно одного байта, чтобы узнать размер и валидатор.
+     *
+     * @throws IOException если не ответило ни одно зеркало
+     */
+    static MirrorPool probe(HttpClient httpClient, String userAgent, List<String> urls) throws IOException, InterruptedException {
+        long probeBytes = urls.size() == 1 ? 1 : PROBE_BYTES;
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        List<Mirror> answered = new ArrayList<>();
+        List<String> withoutRanges = new ArrayList<>();
+        IOException firstError = null;
+        try {
+            List<Future<Mirror>> futures = new ArrayList<>();
+            for (String url : urls) {
+                futures.add(executor.submit(() -> probeOne(httpClient, userAgent, url, probeBytes)));
+            }
+            long deadline = System.nanoTime() + PROBE_TIMEOUT.multipliedBy(2).toNanos();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    Mirror mirror = futures.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    if (mirror.total > 0) answered.add(mirror);
+                    else withoutRanges.add(mirror.url);
+                } catch (ExecutionException | TimeoutException e) {
+                    futures.get(i).cancel(true);
+                    Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+                    System.err.println("Зеркало " + urls.get(i) + " недоступно: " + cause);
+                    if (firstError == null) {
+                        firstError = cause instanceof IOException io ? io : new IOException("Зеркало " + urls.get(i) + " недоступно", cause);
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (answered.isEmpty()) {
+            if (!withoutRanges.isEmpty()) return new MirrorPool(List.of(), null, withoutRanges.get(0));
+            throw firstError != null ? firstError : new IOException("Не указано ни одного адреса для скачивания");
+        }
+        answered.sort(Comparator.comparingDouble(mirror -> mirror.estimatedSeconds(1)));
+        // Зеркало с другим размером отдает другую версию файла, смешивать с ним диапазоны нельзя.
+        // Верным считается размер большинства, при равенстве — у самого быстрого
+        Map<Long, Long> votes = answered.stream().collect(Collectors.groupingBy(mirror -> mirror.total, Collectors.counting()));
+        long total = answered.stream().max(Comparator.comparingLong(mirror -> votes.get(mirror.total))).orElseThrow().total;
+        List<Mirror> usable = new ArrayList<>();
+        for (Mirror mirror : answered) {
+            if (mirror.total == total) {
+                usable.add(mirror);
+            } else {
+                System.err.println("Зеркало " + mirror.url + " пропущено: размер " + mirror.total + " вместо " + total);
+            }
+        }
+        if (urls.size() > 1) System.out.println("Зеркала по скорости: " + usable);
+        Mirror origin = usable.stream().filter(mirror -> mirror.url.equals(urls.get(0))).findFirst().orElse(null);
+        return new MirrorPool(usable, origin, null);
+    }
+
+    private static Mirror probeOne(HttpClient httpClient, String userAgent, String url, long probeBytes)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .version(HttpClient.Version.HTTP_1_1)
+                .timeout(PROBE_TIMEOUT)
+                .header("User-Agent", userAgent)
+                .header("Range", "bytes=0-" + (probeBytes - 1))
+                .build();
+        long started = System.nanoTime();
+        HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        long latency = System.nanoTime() - started;
+        try (InputStream in = response.body()) {
+            if (response.statusCode() != 200 && response.statusCode() != 206) {
+                throw new IOException("Сервер ответил с ошибкой: " + response.statusCode());
+            }
+            if (response.statusCode() == 200) {
+                // Range не поддерживается: такое зеркало годится только для скачивания одним потоком
+                return new Mirror(url, null, -1, latency, 0);
+            }
+            long read = in.transferTo(OutputStream.nullOutputStream());
+            long bodyNanos = System.nanoTime() - started - latency;
+            double rate = probeBytes > 1 && bodyNanos > 0 ? read / (bodyNanos / 1e9) : 0;
+            return new Mirror(url, validatorOf(response), parseTotalSize(response), latency, rate);
+        }
+    }
+
+    boolean supportsRanges() {
+        return !mirrors.isEmpty();
+    }
+
+    /** Адрес для скачивания одним потоком, когда ни одно зеркало не умеет Range. */
+    String fallbackUrl() {
+        return fallbackUrl;
+    }
+
+    long total() {
+        return mirrors.get(0).total;
+    }
+
+    int size() {
+        return mirrors.size();
+    }
+
+    /**
+     * Докачка между запусками сверяется с первым зеркалом: его валидатор сохраняется
+     * рядом с .part, и если он сменился, старые куски выбрасываются.
+     *
+     * @return false, если первое зеркало не ответило или отдает файл другого размера,
+     *         и проверить сохраненные куски не по чему
+     */
+    boolean canResume() {
+        return origin != null;
+    }
+
+    String resumeValidator() {
+        return origin != null ? origin.validator : null;
+    }
+
+    /** Выбирает зеркало для следующего диапазона и отмечает на нем запрос. */
+    synchronized Mirror acquire() {
+        Mirror best = null;
+        for (Mirror mirror : mirrors) {
+            if (mirror.retired) continue;
+            if (best == null || mirror.estimatedSeconds(1) < best.estimatedSeconds(1)) best = mirror;
+        }
+        // Последнее зеркало никогда не выводится, так что best всегда найдется
+        best.active++;
+        return best;
+    }
+
+    /**
+     * Возвращает зеркало после запроса и уточняет его скорость.
+     *
+     * @param failed запрос оборвался или зеркало отдало не тот файл
+     */
+    synchronized void release(Mirror mirror, long bytes, long nanos, boolean failed) {
+        mirror.active--;
+        if (bytes > 0 && nanos > 0) {
+            double rate = bytes / (nanos / 1e9);
+            mirror.bytesPerSecond = mirror.bytesPerSecond > 0
+                    ? RATE_SMOOTHING * rate + (1 - RATE_SMOOTHING) * mirror.bytesPerSecond
+                    : rate;
+        }
+        if (!failed) {
+            mirror.failures = 0;
+            return;
+        }
+        mirror.failures = bytes > 0 ? 1 : mirror.failures + 1;
+        if (mirror.failures >= MAX_CONSECUTIVE_FAILURES) retire(mirror);
+    }
+
+    /** Выводит зеркало из работы, если есть другие живые. */
+    synchronized void retire(Mirror mirror) {
+        if (mirror.retired || mirrors.stream().filter(m -> !m.retired).count() <= 1) return;
+        mirror.retired = true;
+        System.err.println("Зеркало " + mirror.url + " отключено, диапазоны продолжатся с других");
+    }
+
+    /** @return true, если следующий запрос уйдет не на это зеркало, и паузу перед повтором можно не делать */
+    synchronized boolean hasAlternativeTo(Mirror mirror) {
+        return mirrors.stream().anyMatch(m -> m != mirror && !m.retired);
+    }
+
+    static long parseTotalSize(HttpResponse<?> response) {
+        return response.headers().firstValue("Content-Range")
+                .map(CONTENT_RANGE_TOTAL::matcher)
+                .filter(Matcher::find)
+                .map(m -> Long.parseLong(m.group(1)))
+                .orElse(-1L);
+    }
+
+    static String validatorOf(HttpResponse<?> response) {
+        // Слабый ETag для If-Range не годится, тогда опираемся на Last-Modified
+        String etag = response.headers().firstValue("ETag").orElse(null);
+        if (etag != null && !etag.startsWith("W/")) return etag;
+        return response.headers().firstValue("Last-Modified").orElse(null);
+    }
+}
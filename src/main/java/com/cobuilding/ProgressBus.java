@@ -0,0 +1,145 @@
+package com.cobuilding;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Прогресс долгих операций без нагрузки на горячий путь: {@link Operation} только
+ * запоминает последние значения, а отдельный таймер с фиксированной частотой снимает
+ * их, считает скользящую скорость (EWMA) и оставшееся время и отдает один снимок в
+ * {@link Sink}. Если операций несколько, показывается последняя начатая.
+ */
+final class ProgressBus {
+
+    enum Unit { BYTES, FILES }
+
+    record Snapshot(String label, Unit unit, long done, long total, double ratePerSecond, long etaSeconds) {
+
+        /** @return доля от 0 до 1 или -1, если общий объем неизвестен */
+        double fraction() {
+            return total > 0 ? Math.min(1.0, (double) done / total) : -1;
+        }
+
+        String describe() {
+            StringBuilder sb = new StringBuilder(label);
+            if (total > 0) {
+                sb.append(String.format(" %.0f%%", fraction() * 100));
+            } else {
+                sb.append(": ").append(unit == Unit.BYTES ? formatBytes(done) : done + " файлов");
+            }
+            if (ratePerSecond > 0) {
+                sb.append(" · ").append(unit == Unit.BYTES
+                        ? formatBytes((long) ratePerSecond) + "/с"
+                        : String.format("%.0f файлов/с", ratePerSecond));
+            }
+            if (etaSeconds >= 0) {
+                sb.append(String.format(" · осталось %d:%02d", etaSeconds / 60, etaSeconds % 60));
+            }
+            return sb.toString();
+        }
+
+        private static String formatBytes(long bytes) {
+            if (bytes >= 1L << 30) return String.format("%.1f ГБ", bytes / (double) (1L << 30));
+            if (bytes >= 1L << 20) return String.format("%.1f МБ", bytes / (double) (1L << 20));
+            return String.format("%.0f КБ", bytes / 1024.0);
+        }
+    }
+
+    interface Sink {
+        void show(Snapshot snapshot);
+
+        /** Активных операций не осталось. */
+        void hide();
+    }
+
+    final class Operation implements ProgressListener, AutoCloseable {
+        private final String label;
+        private final Unit unit;
+        private volatile long done;
+        private volatile long total;
+
+        // Дальше — состояние таймера, его трогает только поток таймера под блокировкой шины
+        private long lastDone;
+        private long lastNanos = System.nanoTime();
+        private double rate = -1;
+
+        private Operation(String label, Unit unit) {
+            this.label = label;
+            this.unit = unit;
+        }
+
+        @Override
+        public void onProgress(long done, long total) {
+            this.done = done;
+            this.total = total;
+        }
+
+        @Override
+        public void close() {
+            finish(this);
+        }
+
+        private Snapshot sample(long now) {
+            long currentDone = done;
+            long currentTotal = total;
+            double seconds = (now - lastNanos) / 1e9;
+            if (seconds > 0 && currentDone >= lastDone) {
+                double instant = (currentDone - lastDone) / seconds;
+                rate = rate < 0 ? instant : RATE_SMOOTHING * instant + (1 - RATE_SMOOTHING) * rate;
+            }
+            lastDone = currentDone;
+            lastNanos = now;
+            long eta = rate > 0 && currentTotal > currentDone ? (long) Math.ceil((currentTotal - currentDone) / rate) : -1;
+            return new Snapshot(label, unit, currentDone, currentTotal, rate, eta);
+        }
+    }
+
+    // Доля нового замера в скользящей скорости: ~2 секунды памяти при 10 замерах в секунду
+    private static final double RATE_SMOOTHING = 0.05;
+
+    private static final ScheduledExecutorService TICKER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "progress-bus");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Sink sink;
+    private final long intervalMillis;
+    private final List<Operation> active = new ArrayList<>();
+    private ScheduledFuture<?> ticking;
+
+    ProgressBus(Sink sink, long intervalMillis) {
+        this.sink = sink;
+        this.intervalMillis = intervalMillis;
+    }
+
+    synchronized Operation start(String label, Unit unit) {
+        Operation operation = new Operation(label, unit);
+        active.add(operation);
+        if (ticking == null) {
+            ticking = TICKER.scheduleAtFixedRate(this::tick, 0, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+        return operation;
+    }
+
+    private synchronized void finish(Operation operation) {
+        if (!active.remove(operation) || !active.isEmpty()) return;
+        ticking.cancel(false);
+        ticking = null;
+        sink.hide();
+    }
+
+    private synchronized void tick() {
+        if (active.isEmpty()) return;
+        long now = System.nanoTime();
+        Snapshot shown = null;
+        for (Operation operation : active) {
+            shown = operation.sample(now);
+        }
+        sink.show(shown);
+    }
+}
@@ -0,0 +1,6 @@
+package com.cobuilding;
+
+/** Прогресс долгой операции в байтах; {@code total} равен -1, если размер неизвестен. */
+interface ProgressListener {
+    void onProgress(long done, long total);
+}
@@ -0,0 +1,516 @@
+package com.cobuilding;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Качает файл несколькими HTTP Range запросами параллельно и пишет куски
+ * позиционно в заранее выделенный файл. Если сервер не умеет Range,
+ * файл читается одним потоком из ответа на пробный запрос.
+ * <p>
+ * Данные копятся в {@code <target>.part}, а рядом в {@code <target>.part.meta}
+ * лежат URL, валидатор (ETag или Last-Modified) и докачанные диапазоны. Повтор
+ * после обрыва или перезапуска лаунчера продолжает с места остановки через
+ * Range/If-Range; обрывы внутри диапазона повторяются с экспоненциальной паузой.
+ * <p>
+ * Адресов может быть несколько — это зеркала одного файла (см. {@link MirrorPool}).
+ * Тогда файл режется на более мелкие диапазоны, каждый берется с зеркала, где он
+ * закончится раньше, а оборванный диапазон докачивается с другого зеркала с того же места.
+ * <p>
+ * SHA-256 считается по ходу скачивания: отдельный поток идет по диапазонам по
+ * порядку следом за записью и дочитывает только что записанные байты из page cache,
+ * поэтому повторно читать готовый файл с диска для проверки не нужно.
+ */
+final class SegmentedDownloader {
+
+    private static final long MIN_SEGMENT_SIZE = 4L * 1024 * 1024;
+    // С несколькими зеркалами диапазонов больше, чем потоков, чтобы быстрые зеркала забирали себе больше работы
+    private static final int SEGMENTS_PER_WORKER_WITH_MIRRORS = 4;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_ATTEMPTS = 6;
+    private static final long INITIAL_BACKOFF_MILLIS = 1_000;
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+    private static final long STATE_SAVE_INTERVAL_NANOS = 2_000_000_000L;
+    private static final long STALL_TIMEOUT_NANOS = 30_000_000_000L;
+    private static final long STALL_CHECK_SECONDS = 5;
+    private static final long HASH_POLL_MILLIS = 20;
+
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "download-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final HttpClient httpClient;
+    private final String userAgent;
+    private final int maxSegments;
+
+    SegmentedDownloader(HttpClient httpClient, String userAgent, int maxSegments) {
+        this.httpClient = httpClient;
+        this.userAgent = userAgent;
+        this.maxSegments = Math.max(1, maxSegments);
+    }
+
+    /** @return SHA-256 скачанного файла в hex */
+    String download(String url, Path target, ProgressListener listener) throws IOException, InterruptedException {
+        return download(List.of(url), target, listener);
+    }
+
+    /**
+     * @param urls зеркала одного и того же файла; первое служит ключом докачки между запусками
+     * @return SHA-256 скачанного файла в hex
+     */
+    String download(List<String> urls, Path target, ProgressListener listener) throws IOException, InterruptedException {
+        Path partFile = target.resolveSibling(target.getFileName() + ".part");
+        Path stateFile = target.resolveSibling(target.getFileName() + ".part.meta");
+
+        for (int restart = 0; ; restart++) {
+            try {
+                String sha256 = downloadToPart(urls, partFile, stateFile, listener);
+                Files.move(partFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Files.deleteIfExists(stateFile);
+                return sha256;
+            } catch (ResourceChangedException e) {
+                // Файл на сервере сменился — докачивать старые куски нельзя
+                Files.deleteIfExists(partFile);
+                Files.deleteIfExists(stateFile);
+                if (restart + 1 >= MAX_ATTEMPTS) throw e;
+            }
+        }
+    }
+
+    private String downloadToPart(List<String> urls, Path partFile, Path stateFile, ProgressListener listener) throws IOException, InterruptedException {
+        MirrorPool mirrors = retrying(() -> MirrorPool.probe(httpClient, userAgent, urls));
+        if (!mirrors.supportsRanges()) {
+            // Range нет или размер неизвестен — качаем одним потоком
+            String sha256 = downloadSingleStream(mirrors.fallbackUrl(), partFile, listener);
+            Files.deleteIfExists(stateFile);
+            return sha256;
+        }
+
+        long total = mirrors.total();
+        String url = urls.get(0);
+        String validator = mirrors.resumeValidator();
+        DownloadState saved = DownloadState.load(stateFile);
+        boolean resumable = mirrors.canResume() && saved != null && saved.matches(url, total, validator)
+                && Files.exists(partFile) && Files.size(partFile) == total;
+        int segmentCount = mirrors.size() > 1 ? maxSegments * SEGMENTS_PER_WORKER_WITH_MIRRORS : maxSegments;
+        DownloadState state = resumable ? saved : DownloadState.create(url, total, validator, segmentCount);
+
+        try (FileChannel channel = FileChannel.open(partFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            if (channel.size() != total) {
+                channel.truncate(0);
+                channel.write(ByteBuffer.wrap(new byte[1]), total - 1);
+            }
+            state.save(stateFile);
+
+            AtomicLong downloaded = new AtomicLong(state.completedBytes());
+            StateSaver saver = new StateSaver(state, stateFile, channel);
+            Queue<Segment> pending = new ConcurrentLinkedQueue<>(state.segments.stream().filter(s -> !s.isComplete()).toList());
+            int workers = Math.min(maxSegments, pending.size());
+            ExecutorService executor = Executors.newFixedThreadPool(workers + 1);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int i = 0; i < workers; i++) {
+                    futures.add(executor.submit(() -> {
+                        // Диапазоны разбираются по порядку, поэтому хэш идет почти вплотную за записью
+                        for (Segment segment; (segment = pending.poll()) != null; ) {
+                            downloadSegment(state, segment, mirrors, partFile, downloaded, listener, saver);
+                        }
+                        return null;
+                    }));
+                }
+                Future<String> hash = executor.submit(() -> hashInOrder(state, partFile));
+                futures.add(hash);
+                awaitAll(futures);
+                return hash.get();
+            } catch (ExecutionException e) {
+                throw new IOException("Не удалось посчитать SHA-256", e.getCause());
+            } finally {
+                executor.shutdownNow();
+                saver.saveNow();
+            }
+        }
+    }
+
+    private String hashInOrder(DownloadState state, Path partFile) throws IOException, InterruptedException {
+        MessageDigest md = Checksums.newSha256();
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE * 4);
+        try (FileChannel channel = FileChannel.open(partFile, StandardOpenOption.READ)) {
+            for (Segment segment : state.segments) {
+                long hashed = 0;
+                while (hashed < segment.length()) {
+                    long available = Math.min(segment.done.get(), segment.length());
+                    if (available <= hashed) {
+                        Thread.sleep(HASH_POLL_MILLIS);
+                        continue;
+                    }
+                    buffer.clear().limit((int) Math.min(buffer.capacity(), available - hashed));
+                    int read = channel.read(buffer, segment.start + hashed);
+                    if (read < 0) throw new IOException("Файл закончился раньше ожидаемого");
+                    buffer.flip();
+                    md.update(buffer);
+                    hashed += read;
+                }
+            }
+        }
+        return Checksums.toHex(md.digest());
+    }
+
+    private void downloadSegment(DownloadState state, Segment segment, MirrorPool mirrors, Path partFile, AtomicLong downloaded,
+                                 ProgressListener listener, StateSaver saver) throws IOException, InterruptedException {
+        int maxAttempts = MAX_ATTEMPTS + mirrors.size() - 1;
+        int attempt = 0;
+        while (!segment.isComplete()) {
+            MirrorPool.Mirror mirror = mirrors.acquire();
+            long before = segment.done.get();
+            long started = System.nanoTime();
+            IOException failure = null;
+            try (StallGuard guard = new StallGuard()) {
+                guard.run(() -> fetchRange(state, segment, mirror, partFile, downloaded, listener, saver, guard));
+            } catch (ResourceChangedException e) {
+                // С одним адресом качать заново с нуля; среди зеркал просто не берем то, что подменило файл
+                if (mirrors.size() == 1) throw e;
+                mirrors.retire(mirror);
+                failure = e;
+            } catch (IOException e) {
+                failure = e;
+            } finally {
+                mirrors.release(mirror, segment.done.get() - before, System.nanoTime() - started, !segment.isComplete());
+            }
+            if (failure == null) continue;
+            // Попытка, которая продвинулась, не считается неудачной
+            attempt = segment.done.get() > before ? 1 : attempt + 1;
+            if (attempt >= maxAttempts) throw failure;
+            // Другое зеркало продолжит диапазон с того же места сразу, пауза нужна только перед повтором на том же
+            if (!mirrors.hasAlternativeTo(mirror)) backoff(attempt);
+        }
+    }
+
+    private Void fetchRange(DownloadState state, Segment segment, MirrorPool.Mirror mirror, Path partFile, AtomicLong downloaded,
+                            ProgressListener listener, StateSaver saver, StallGuard guard) throws IOException, InterruptedException {
+        long from = segment.start + segment.done.get();
+        HttpRequest.Builder builder = newRequest(mirror.url).header("Range", "bytes=" + from + "-" + segment.end);
+        if (mirror.validator != null) builder.header("If-Range", mirror.validator);
+        HttpResponse<InputStream> response = httpClient.send(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+        // Свой канал на каждый диапазон: прерывание одного потока закрывает только его канал
+        try (InputStream in = response.body();
+             FileChannel channel = FileChannel.open(partFile, StandardOpenOption.WRITE)) {
+            if (response.statusCode() == 200) {
+                throw new ResourceChangedException();
+            }
+            if (response.statusCode() != 206) {
+                throw new IOException("Сервер не вернул запрошенный диапазон: " + response.statusCode());
+            }
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long position = from;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                if (position + read > segment.end + 1) {
+                    throw new IOException("Сервер вернул больше данных, чем запрошено");
+                }
+                ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+                while (chunk.hasRemaining()) {
+                    position += channel.write(chunk, position);
+                }
+                segment.done.addAndGet(read);
+                guard.progress();
+                listener.onProgress(downloaded.addAndGet(read), state.total);
+                saver.maybeSave();
+            }
+            if (!segment.isComplete()) {
+                throw new IOException("Соединение оборвалось: получено " + segment.done.get() + " из " + segment.length() + " байт");
+            }
+        }
+        return null;
+    }
+
+    private String downloadSingleStream(String url, Path partFile, ProgressListener listener) throws IOException, InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try (StallGuard guard = new StallGuard()) {
+                return guard.run(() -> {
+                    HttpResponse<InputStream> response = httpClient.send(newRequest(url).build(), HttpResponse.BodyHandlers.ofInputStream());
+                    return copySingleStream(response, partFile, listener, guard);
+                });
+            } catch (IOException e) {
+                if (attempt >= MAX_ATTEMPTS) throw e;
+                backoff(attempt);
+            }
+        }
+    }
+
+    private String copySingleStream(HttpResponse<InputStream> response, Path partFile, ProgressListener listener,
+                                    StallGuard guard) throws IOException {
+        if (response.statusCode() != 200) {
+            response.body().close();
+            throw new IOException("Сервер ответил с ошибкой: " + response.statusCode());
+        }
+        long total = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+        MessageDigest md = Checksums.newSha256();
+        try (InputStream in = response.body();
+             FileChannel channel = FileChannel.open(partFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long downloaded = 0;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                md.update(buffer, 0, read);
+                ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+                while (chunk.hasRemaining()) {
+                    channel.write(chunk);
+                }
+                downloaded += read;
+                guard.progress();
+                listener.onProgress(downloaded, total);
+            }
+            if (total > 0 && downloaded != total) {
+                throw new IOException("Соединение оборвалось: получено " + downloaded + " из " + total + " байт");
+            }
+        }
+        return Checksums.toHex(md.digest());
+    }
+
+    /**
+     * Оборванное без RST соединение может висеть в read() бесконечно. Если данных нет
+     * дольше {@link #STALL_TIMEOUT_NANOS}, сторож прерывает поток, а прерывание
+     * превращается в обычную IOException, которую можно повторить.
+     */
+    private static final class StallGuard implements AutoCloseable {
+        private final Thread worker = Thread.currentThread();
+        private final AtomicLong lastProgress = new AtomicLong(System.nanoTime());
+        private volatile boolean stalled;
+        private final ScheduledFuture<?> check = WATCHDOG.scheduleWithFixedDelay(this::check,
+                STALL_CHECK_SECONDS, STALL_CHECK_SECONDS, TimeUnit.SECONDS);
+
+        void progress() {
+            lastProgress.set(System.nanoTime());
+        }
+
+        private void check() {
+            if (!stalled && System.nanoTime() - lastProgress.get() > STALL_TIMEOUT_NANOS) {
+                stalled = true;
+                worker.interrupt();
+            }
+        }
+
+        <T> T run(HttpCall<T> call) throws IOException, InterruptedException {
+            try {
+                return call.call();
+            } catch (IOException | InterruptedException e) {
+                if (stalled) {
+                    throw new IOException("Нет данных от сервера дольше " + STALL_TIMEOUT_NANOS / 1_000_000_000L + " с", e);
+                }
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() {
+            check.cancel(false);
+            // Сторож мог сработать в последний момент — флаг прерывания тогда не наш
+            if (stalled) Thread.interrupted();
+        }
+    }
+
+    private interface HttpCall<T> {
+        T call() throws IOException, InterruptedException;
+    }
+
+    private static <T> T retrying(HttpCall<T> call) throws IOException, InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return call.call();
+            } catch (IOException e) {
+                if (attempt >= MAX_ATTEMPTS) throw e;
+                backoff(attempt);
+            }
+        }
+    }
+
+    private static void backoff(int attempt) throws InterruptedException {
+        long delay = Math.min(MAX_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS << Math.min(attempt - 1, 10));
+        Thread.sleep(delay);
+    }
+
+    private static void awaitAll(List<Future<?>> futures) throws IOException, InterruptedException {
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            futures.forEach(f -> f.cancel(true));
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) throw io;
+            if (cause instanceof InterruptedException ie) throw ie;
+            throw new IOException("Ошибка при скачивании", cause);
+        } catch (InterruptedException e) {
+            futures.forEach(f -> f.cancel(true));
+            throw e;
+        }
+    }
+
+    private HttpRequest.Builder newRequest(String url) {
+        // HTTP/1.1, чтобы каждый диапазон шел отдельным TCP-соединением, а не мультиплексировался в одно
+        return HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .version(HttpClient.Version.HTTP_1_1)
+                .header("User-Agent", userAgent);
+    }
+
+    private static final class ResourceChangedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        ResourceChangedException() {
+            super("Файл на сервере изменился во время скачивания");
+        }
+    }
+
+    private static final class Segment {
+        final long start;
+        final long end;
+        final AtomicLong done;
+
+        Segment(long start, long end, long done) {
+            this.start = start;
+            this.end = end;
+            this.done = new AtomicLong(done);
+        }
+
+        long length() {
+            return end - start + 1;
+        }
+
+        boolean isComplete() {
+            return done.get() >= length();
+        }
+    }
+
+    private static final class DownloadState {
+        final String url;
+        final long total;
+        final String validator;
+        final List<Segment> segments;
+
+        private DownloadState(String url, long total, String validator, List<Segment> segments) {
+            this.url = url;
+            this.total = total;
+            this.validator = validator;
+            this.segments = segments;
+        }
+
+        static DownloadState create(String url, long total, String validator, int maxSegments) {
+            int count = (int) Math.min(maxSegments, Math.max(1, (total + MIN_SEGMENT_SIZE - 1) / MIN_SEGMENT_SIZE));
+            long segmentSize = (total + count - 1) / count;
+            List<Segment> segments = new ArrayList<>();
+            for (long start = 0; start < total; start += segmentSize) {
+                segments.add(new Segment(start, Math.min(total, start + segmentSize) - 1, 0));
+            }
+            return new DownloadState(url, total, validator, segments);
+        }
+
+        static DownloadState load(Path stateFile) {
+            if (!Files.exists(stateFile)) return null;
+            Properties props = new Properties();
+            try (Reader reader = Files.newBufferedReader(stateFile)) {
+                props.load(reader);
+                List<Segment> segments = new ArrayList<>();
+                for (String item : props.getProperty("segments", "").split(",")) {
+                    if (item.isBlank()) continue;
+                    String[] rangeAndDone = item.split(":");
+                    String[] bounds = rangeAndDone[0].split("-");
+                    segments.add(new Segment(Long.parseLong(bounds[0]), Long.parseLong(bounds[1]), Long.parseLong(rangeAndDone[1])));
+                }
+                if (segments.isEmpty()) return null;
+                return new DownloadState(props.getProperty("url"), Long.parseLong(props.getProperty("total")),
+                        props.getProperty("validator"), segments);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Не удалось прочитать состояние докачки " + stateFile + ": " + e.getMessage());
+                return null;
+            }
+        }
+
+        boolean matches(String url, long total, String validator) {
+            return this.url != null && this.url.equals(url) && this.total == total
+                    && (this.validator == null ? validator == null : this.validator.equals(validator));
+        }
+
+        long completedBytes() {
+            return segments.stream().mapToLong(s -> Math.min(s.done.get(), s.length())).sum();
+        }
+
+        synchronized void save(Path stateFile) throws IOException {
+            Properties props = new Properties();
+            props.setProperty("url", url);
+            props.setProperty("total", String.valueOf(total));
+            if (validator != null) props.setProperty("validator", validator);
+            StringBuilder sb = new StringBuilder();
+            for (Segment segment : segments) {
+                if (sb.length() > 0) sb.append(',');
+                sb.append(segment.start).append('-').append(segment.end).append(':').append(segment.done.get());
+            }
+            props.setProperty("segments", sb.toString());
+            Path tmp = stateFile.resolveSibling(stateFile.getFileName() + ".tmp");
+            try (Writer writer = Files.newBufferedWriter(tmp)) {
+                props.store(writer, null);
+            }
+            Files.move(tmp, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /** Сохраняет состояние не чаще раза в пару секунд, предварительно сбрасывая данные на диск. */
+    private static final class StateSaver {
+        private final DownloadState state;
+        private final Path stateFile;
+        private final FileChannel channel;
+        private final AtomicLong lastSave = new AtomicLong(System.nanoTime());
+
+        StateSaver(DownloadState state, Path stateFile, FileChannel channel) {
+            this.state = state;
+            this.stateFile = stateFile;
+            this.channel = channel;
+        }
+
+        void maybeSave() {
+            long last = lastSave.get();
+            long now = System.nanoTime();
+            if (now - last >= STATE_SAVE_INTERVAL_NANOS && lastSave.compareAndSet(last, now)) {
+                saveNow();
+            }
+        }
+
+        void saveNow() {
+            try {
+                if (channel.isOpen()) channel.force(false);
+                state.save(stateFile);
+            } catch (IOException e) {
+                System.err.println("Не удалось сохранить состояние докачки: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.cobuilding;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Независимые этапы, запущенные параллельно на виртуальных потоках. Первая ошибка
+ * любого этапа отменяет все остальные и потом выходит из {@link Stage#join()} с
+ * именем этапа, а закрытие группы отменяет все, что еще не завершилось, — так
+ * отмена и ошибки параллельных этапов обрабатываются в одном месте.
+ */
+final class TaskGroup implements AutoCloseable {
+
+    interface Task<T> {
+        T run() throws Exception;
+    }
+
+    final class Stage<T> {
+        private final String name;
+        private final Future<T> future;
+
+        private Stage(String name, Future<T> future) {
+            this.name = name;
+            this.future = future;
+        }
+
+        boolean isDone() {
+            return future.isDone();
+        }
+
+        T join() throws IOException, InterruptedException {
+            try {
+                return future.get();
+            } catch (ExecutionException | CancellationException e) {
+                // Этап, отмененный из-за чужой ошибки, сообщает о первопричине
+                IOException failure = firstFailure.get();
+                if (failure != null) throw failure;
+                throw toIOException(name, e instanceof ExecutionException ? e.getCause() : e);
+            } catch (InterruptedException e) {
+                cancelAll();
+                throw e;
+            }
+        }
+    }
+
+    private static final long CLOSE_TIMEOUT_SECONDS = 10;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final List<Future<?>> futures = new CopyOnWriteArrayList<>();
+    private final AtomicReference<IOException> firstFailure = new AtomicReference<>();
+
+    <T> Stage<T> fork(String name, Task<T> task) {
+        Future<T> future = executor.submit(() -> {
+            try {
+                return task.run();
+            } catch (Exception e) {
+                if (firstFailure.compareAndSet(null, toIOException(name, e))) {
+                    cancelAll();
+                }
+                throw e;
+            }
+        });
+        futures.add(future);
+        if (firstFailure.get() != null) future.cancel(true);
+        return new Stage<>(name, future);
+    }
+
+    void cancelAll() {
+        futures.forEach(future -> future.cancel(true));
+    }
+
+    @Override
+    public void close() {
+        cancelAll();
+        executor.shutdownNow();
+        try {
+            // Дожидаемся, чтобы прерванные этапы не писали в папку клиента после выхода
+            if (!executor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                System.err.println("Не все фоновые этапы завершились за " + CLOSE_TIMEOUT_SECONDS + " с");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static IOException toIOException(String name, Throwable cause) {
+        if (cause instanceof IOException io) return io;
+        if (cause instanceof InterruptedException || cause instanceof CancellationException) {
+            InterruptedIOException interrupted = new InterruptedIOException("Этап \"" + name + "\" отменен");
+            interrupted.initCause(cause);
+            return interrupted;
+        }
+        return new IOException("Этап \"" + name + "\" завершился с ошибкой: " + cause.getMessage(), cause);
+    }
+}
@@ -0,0 +1,174 @@
+package com.cobuilding;
+
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Рекурсивное удаление на fork/join: каждая папка — отдельная задача, содержимое
+ * читается потоком через {@link DirectoryStream}, без сбора и сортировки всего дерева.
+ * Ошибки не прерывают удаление, а собираются в {@link Result}.
+ * <p>
+ * {@link #discard} сначала переименовывает дерево в папку {@code trash}, а само
+ * удаление идет в фоне на отдельном, меньшем пуле, чтобы не отнимать диск у установки.
+ */
+final class TreeDeleter {
+
+    static final String TRASH_DIRECTORY_NAME = "trash";
+
+    private static final int PROGRESS_STEP = 256;
+
+    record Result(long deleted, List<Path> failed) {}
+
+    private final Path trashDir;
+    private final ForkJoinPool pool;
+    private final ForkJoinPool purgePool;
+    private final ExecutorService purger = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "trash-purge");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean purgeScheduled = new AtomicBoolean();
+
+    TreeDeleter(Path trashDir, int parallelism) {
+        this.trashDir = trashDir;
+        this.pool = new ForkJoinPool(Math.max(1, parallelism));
+        this.purgePool = new ForkJoinPool(Math.max(1, parallelism / 2));
+    }
+
+    /** Удаляет дерево сразу; listener получает число удаленных путей, общее число заранее неизвестно. */
+    Result delete(Path path, ProgressListener listener) {
+        return delete(pool, path, listener);
+    }
+
+    /**
+     * Мгновенно убирает дерево с пути переименованием в {@code trash} и удаляет его в фоне.
+     * Если переименовать не вышло (например, файл занят), удаляет сразу на месте.
+     */
+    void discard(Path path) throws IOException {
+        if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) return;
+        try {
+            Files.createDirectories(trashDir);
+            Files.move(path, trashDir.resolve(path.getFileName() + "-" + UUID.randomUUID()), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Не удалось перенести " + path + " в корзину, удаляем на месте: " + e.getMessage());
+            Result result = delete(path, (done, total) -> {});
+            if (!result.failed().isEmpty()) {
+                throw new IOException("Не удалось удалить " + result.failed().size() + " путей в " + path);
+            }
+            return;
+        }
+        purgeTrashLater();
+    }
+
+    /** Дочищает корзину в фоне, в том числе то, что осталось с прошлого запуска. */
+    void purgeTrashLater() {
+        if (!purgeScheduled.compareAndSet(false, true)) return;
+        purger.execute(() -> {
+            purgeScheduled.set(false);
+            if (!Files.isDirectory(trashDir)) return;
+            // Саму папку корзины не удаляем: в нее в это время может переноситься новое дерево
+            int failed = 0;
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(trashDir)) {
+                for (Path entry : entries) {
+                    failed += delete(purgePool, entry, (done, total) -> {}).failed().size();
+                }
+            } catch (IOException e) {
+                System.err.println("Не удалось очистить корзину: " + e.getMessage());
+            }
+            if (failed > 0) {
+                System.err.println("В корзине осталось " + failed + " путей, удалим при следующем запуске");
+            }
+        });
+    }
+
+    private static Result delete(ForkJoinPool pool, Path path, ProgressListener listener) {
+        Queue<Path> failed = new ConcurrentLinkedQueue<>();
+        AtomicLong deleted = new AtomicLong();
+        if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+            pool.invoke(new DeleteTask(path, deleted, failed, listener));
+        } else {
+            deleteOne(path, deleted, failed, listener);
+        }
+        return new Result(deleted.get(), new ArrayList<>(failed));
+    }
+
+    /** @return true, если поддерево удалено целиком */
+    private static boolean deleteOne(Path path, AtomicLong deleted, Queue<Path> failed, ProgressListener listener) {
+        try {
+            try {
+                Files.deleteIfExists(path);
+            } catch (AccessDeniedException e) {
+                // На Windows файлы с атрибутом «только чтение» не удаляются без его снятия
+                if (!path.toFile().setWritable(true)) throw e;
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException e) {
+            if (failed.isEmpty()) System.err.println("Не удалось удалить: " + path + " | Причина: " + e.getMessage());
+            failed.add(path);
+            return false;
+        }
+        long done = deleted.incrementAndGet();
+        if (done % PROGRESS_STEP == 0) listener.onProgress(done, 0);
+        return true;
+    }
+
+    private static final class DeleteTask extends RecursiveTask<Boolean> {
+        private static final long serialVersionUID = 1L;
+
+        private final Path dir;
+        private final AtomicLong deleted;
+        private final Queue<Path> failed;
+        private final ProgressListener listener;
+
+        DeleteTask(Path dir, AtomicLong deleted, Queue<Path> failed, ProgressListener listener) {
+            this.dir = dir;
+            this.deleted = deleted;
+            this.failed = failed;
+            this.listener = listener;
+        }
+
+        @Override
+        protected Boolean compute() {
+            boolean complete = true;
+            List<DeleteTask> subtasks = new ArrayList<>();
+            try (DirectoryStream<Path> children = Files.newDirectoryStream(dir)) {
+                for (Path child : children) {
+                    if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                        DeleteTask subtask = new DeleteTask(child, deleted, failed, listener);
+                        subtask.fork();
+                        subtasks.add(subtask);
+                    } else {
+                        complete &= deleteOne(child, deleted, failed, listener);
+                    }
+                }
+            } catch (NoSuchFileException e) {
+                return true;
+            } catch (IOException e) {
+                failed.add(dir);
+                complete = false;
+            }
+            for (DeleteTask subtask : subtasks) {
+                complete &= subtask.join();
+            }
+            // Папку с неудаленным содержимым не трогаем, ошибка уже записана по файлу
+            return complete && deleteOne(dir, deleted, failed, listener);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.cobuilding;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Распаковка по центральному каталогу архива: все пути проверяются и папки
+ * создаются один раз заранее, а файлы распаковываются пачками на ограниченном пуле.
+ * Мелкие файлы группируются, чтобы тысячи записей не превращались в тысячи задач.
+ */
+final class ZipExtractor {
+
+    private static final long BATCH_BYTES = 8L * 1024 * 1024;
+    private static final int BATCH_FILES = 256;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final int threads;
+
+    ZipExtractor(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    void extract(Path zipFile, Path destDir, ProgressListener listener) throws IOException {
+        Files.createDirectories(destDir);
+        Path canonicalDestDir = destDir.toRealPath();
+
+        try (ZipFile zip = new ZipFile(zipFile.toFile())) {
+            Set<Path> directories = new TreeSet<>(Comparator.comparingInt(Path::getNameCount).thenComparing(Comparator.naturalOrder()));
+            List<ZipEntry> files = new ArrayList<>();
+            List<Path> targets = new ArrayList<>();
+            long totalBytes = 0;
+
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                Path resolvedPath = canonicalDestDir.resolve(entry.getName()).normalize();
+                if (!resolvedPath.startsWith(canonicalDestDir)) {
+                    throw new IOException("Попытка распаковки файла вне целевой директории: " + entry.getName());
+                }
+                if (entry.isDirectory()) {
+                    directories.add(resolvedPath);
+                } else {
+                    directories.add(resolvedPath.getParent());
+                    files.add(entry);
+                    targets.add(resolvedPath);
+                    totalBytes += Math.max(0, entry.getSize());
+                }
+            }
+
+            for (Path directory : directories) {
+                Files.createDirectories(directory);
+            }
+
+            AtomicLong extracted = new AtomicLong();
+            long total = totalBytes;
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<Void>> futures = new ArrayList<>();
+                int batchStart = 0;
+                long batchBytes = 0;
+                for (int i = 0; i < files.size(); i++) {
+                    batchBytes += Math.max(0, files.get(i).getSize());
+                    boolean last = i == files.size() - 1;
+                    if (last || batchBytes >= BATCH_BYTES || i - batchStart + 1 >= BATCH_FILES) {
+                        int from = batchStart;
+                        int to = i + 1;
+                        futures.add(executor.submit(() -> {
+                            byte[] buffer = new byte[BUFFER_SIZE];
+                            for (int j = from; j < to; j++) {
+                                extractEntry(zip, files.get(j), targets.get(j), buffer, extracted, total, listener);
+                            }
+                            return null;
+                        }));
+                        batchStart = i + 1;
+                        batchBytes = 0;
+                    }
+                }
+                awaitAll(futures);
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Достает из архива только указанные файлы (произвольным доступом по центральному
+     * каталогу) и кладет их на место, только если размер и SHA-256 совпали с манифестом.
+     *
+     * @return файлы, которые восстановить из архива не удалось
+     */
+    List<ClientManifest.Entry> extractVerified(Path zipFile, Path destDir, Collection<ClientManifest.Entry> wanted) throws IOException {
+        Path root = destDir.toAbsolutePath().normalize();
+        List<ClientManifest.Entry> missing = new ArrayList<>();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (ZipFile zip = new ZipFile(zipFile.toFile())) {
+            for (ClientManifest.Entry entry : wanted) {
+                ZipEntry zipEntry = zip.getEntry(entry.path());
+                if (zipEntry == null || zipEntry.isDirectory()) {
+                    missing.add(entry);
+                    continue;
+                }
+                Path target = ClientManifest.resolveSafely(root, entry.path());
+                Files.createDirectories(target.getParent());
+                Path partFile = target.resolveSibling(target.getFileName() + ".part");
+                try {
+                    MessageDigest md = Checksums.newSha256();
+                    long size = 0;
+                    try (InputStream in = zip.getInputStream(zipEntry); OutputStream out = Files.newOutputStream(partFile)) {
+                        int read;
+                        while ((read = in.read(buffer)) != -1) {
+                            md.update(buffer, 0, read);
+                            out.write(buffer, 0, read);
+                            size += read;
+                        }
+                    }
+                    if (size == entry.size() && Checksums.toHex(md.digest()).equalsIgnoreCase(entry.sha256())) {
+                        Files.move(partFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    } else {
+                        missing.add(entry);
+                    }
+                } finally {
+                    Files.deleteIfExists(partFile);
+                }
+            }
+        }
+        return missing;
+    }
+
+    private static void extractEntry(ZipFile zip, ZipEntry entry, Path target, byte[] buffer,
+                                     AtomicLong extracted, long total, ProgressListener listener) throws IOException {
+        try (InputStream in = zip.getInputStream(entry); OutputStream out = Files.newOutputStream(target)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                listener.onProgress(extracted.addAndGet(read), total);
+            }
+        }
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Распаковка прервана");
+        }
+    }
+
+    private static void awaitAll(List<Future<Void>> futures) throws IOException {
+        try {
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            futures.forEach(f -> f.cancel(true));
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) throw io;
+            throw new IOException("Ошибка при распаковке", cause);
+        } catch (InterruptedException e) {
+            futures.forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Распаковка прервана");
+        }
+    }
+}
@@ -2,6 +2,8 @@ module cobuilding {
     requires javafx.controls;
     requires javafx.fxml;
     requires java.net.http;
+    requires jdk.httpserver;
+    requires jdk.management;
 
     opens com.cobuilding to javafx.fxml;
     exports com.cobuilding;
@@ -0,0 +1,160 @@
+package com.cobuilding;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryPatchTest {
+
+    private static final int SIZE = 256 * 1024;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripsRandomEdits() throws Exception {
+        for (long seed = 1; seed <= 8; seed++) {
+            Random random = new Random(seed);
+            byte[] old = SegmentedDownloaderTest.payload(seed, SIZE);
+            byte[] current = edit(old, random, 1 + random.nextInt(20));
+
+            Path patch = createPatch(old, current);
+            Path target = dir.resolve("new-" + seed);
+            String sha256;
+            try (InputStream in = Files.newInputStream(patch)) {
+                sha256 = BinaryPatch.apply(dir.resolve("old"), in, target);
+            }
+
+            assertArrayEquals(current, Files.readAllBytes(target), "seed " + seed);
+            assertEquals(SegmentedDownloaderTest.sha256(current), sha256);
+            // Несколько правок не должны превращать патч в копию нового файла
+            assertTrue(Files.size(patch) < current.length / 4, "патч " + Files.size(patch) + " байт, seed " + seed);
+        }
+    }
+
+    @Test
+    void roundTripsUnrelatedAndEmptyFiles() throws Exception {
+        byte[] old = SegmentedDownloaderTest.payload(10, SIZE);
+        for (byte[] current : List.of(SegmentedDownloaderTest.payload(11, 1000), new byte[0], Arrays.copyOf(old, 10))) {
+            Path patch = createPatch(old, current);
+            Path target = dir.resolve("new");
+            try (InputStream in = Files.newInputStream(patch)) {
+                BinaryPatch.apply(dir.resolve("old"), in, target);
+            }
+            assertArrayEquals(current, Files.readAllBytes(target));
+        }
+    }
+
+    @Test
+    void rejectsCorruptPatches() throws Exception {
+        byte[] old = SegmentedDownloaderTest.payload(20, SIZE);
+        byte[] current = edit(old, new Random(20), 5);
+        byte[] patch = Files.readAllBytes(createPatch(old, current));
+        Path oldFile = dir.resolve("old");
+        Path target = dir.resolve("new");
+
+        byte[] wrongMagic = patch.clone();
+        wrongMagic[0] ^= 1;
+        assertThrows(IOException.class, () -> BinaryPatch.apply(oldFile, new ByteArrayInputStream(wrongMagic), target));
+
+        byte[] truncated = Arrays.copyOf(patch, patch.length / 2);
+        assertThrows(IOException.class, () -> BinaryPatch.apply(oldFile, new ByteArrayInputStream(truncated), target));
+
+        // Сжатый поток с испорченной серединой
+        byte[] flipped = patch.clone();
+        for (int i = patch.length / 3; i < patch.length / 3 + 16; i++) flipped[i] ^= (byte) 0xA5;
+        assertThrows(IOException.class, () -> BinaryPatch.apply(oldFile, new ByteArrayInputStream(flipped), target));
+
+        // Патч от другого, более короткого старого файла ссылается за его конец
+        Files.write(oldFile, Arrays.copyOf(old, 1000));
+        assertThrows(IOException.class, () -> BinaryPatch.apply(oldFile, new ByteArrayInputStream(patch), target));
+    }
+
+    @Test
+    void chainPicksSmallestTotalSize() throws Exception {
+        BinaryPatch.Index index = BinaryPatch.Index.parse("""
+                # старый новый размер тег файл
+                AAA bbb 100 v2 a-b.patch
+                bbb ccc 100 v3 b-c.patch
+                aaa ccc 500 v3 a-c.patch
+                ccc ddd 50 v4 c-d.patch
+                """);
+
+        List<BinaryPatch.Patch> chain = index.chain("aaa", "ddd", Long.MAX_VALUE);
+
+        assertEquals(List.of("a-b.patch", "b-c.patch", "c-d.patch"), chain.stream().map(BinaryPatch.Patch::asset).toList());
+        // Хэши сравниваются без учета регистра
+        assertEquals(2, index.chain("AAA", "CCC", Long.MAX_VALUE).size());
+    }
+
+    @Test
+    void chainIsEmptyWhenMissingOrTooLarge() throws Exception {
+        BinaryPatch.Index index = BinaryPatch.Index.parse("""
+                aaa bbb 100 v2 a-b.patch
+                bbb ccc 100 v3 b-c.patch
+                """);
+
+        assertTrue(index.chain("aaa", "ccc", 200).isEmpty(), "цепочка не меньше предела");
+        assertEquals(2, index.chain("aaa", "ccc", 201).size());
+        assertTrue(index.chain("ccc", "aaa", Long.MAX_VALUE).isEmpty(), "патчей назад нет");
+        assertTrue(index.chain("aaa", "aaa", Long.MAX_VALUE).isEmpty());
+        assertTrue(index.chain("zzz", "ccc", Long.MAX_VALUE).isEmpty());
+        assertTrue(BinaryPatch.Index.EMPTY.chain("aaa", "bbb", Long.MAX_VALUE).isEmpty());
+    }
+
+    @Test
+    void rejectsMalformedIndex() {
+        assertThrows(IOException.class, () -> BinaryPatch.Index.parse("aaa bbb 100 v2"));
+        assertThrows(IOException.class, () -> BinaryPatch.Index.parse("aaa bbb big v2 a-b.patch"));
+    }
+
+    private Path createPatch(byte[] old, byte[] current) throws IOException {
+        Path oldFile = dir.resolve("old");
+        Path newFile = dir.resolve("current");
+        Path patch = dir.resolve("patch");
+        Files.write(oldFile, old);
+        Files.write(newFile, current);
+        BinaryPatch.create(oldFile, newFile, patch);
+        return patch;
+    }
+
+    /** Вставки, удаления и замены небольших участков, как при пересборке нескольких классов в jar. */
+    private static byte[] edit(byte[] data, Random random, int edits) {
+        byte[] result = data.clone();
+        for (int i = 0; i < edits; i++) {
+            int at = random.nextInt(result.length);
+            int length = 1 + random.nextInt(300);
+            byte[] inserted = new byte[length];
+            random.nextBytes(inserted);
+            int removed = switch (random.nextInt(3)) {
+                case 0 -> 0;
+                case 1 -> Math.min(length, result.length - at);
+                default -> Math.min(random.nextInt(300), result.length - at);
+            };
+            boolean delete = removed > 0 && random.nextInt(3) == 0;
+            byte[] next = new byte[result.length - removed + (delete ? 0 : length)];
+            System.arraycopy(result, 0, next, 0, at);
+            int tail = at;
+            if (!delete) {
+                System.arraycopy(inserted, 0, next, at, length);
+                tail += length;
+            }
+            System.arraycopy(result, at + removed, next, tail, result.length - at - removed);
+            result = next;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,120 @@
+package com.cobuilding;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClientManifestTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void diffDownloadsOnlyChangedOrMissingFiles() throws Exception {
+        String same = write("mods/same.jar", "same");
+        String oldChanged = write("mods/changed.jar", "old");
+        write("config/resized.json", "short");
+        String unknown = write("libraries/unknown.jar", "unknown");
+        write("libraries/tampered.jar", "tampered");
+        write("mods/user.jar", "мод игрока");
+        write("mods/dropped.jar", "dropped");
+
+        ClientManifest installed = ClientManifest.parse(String.join("\n",
+                line(same, "mods/same.jar", "same"),
+                line(oldChanged, "mods/changed.jar", "old"),
+                line(sha256("dropped"), "mods/dropped.jar", "dropped")));
+        ClientManifest remote = ClientManifest.parse(String.join("\n",
+                line(same, "mods/same.jar", "same"),
+                line(sha256("new"), "mods/changed.jar", "new"),
+                line(sha256("much longer"), "config/resized.json", "much longer"),
+                line(unknown, "libraries/unknown.jar", "unknown"),
+                line(sha256("tempered"), "libraries/tampered.jar", "tempered"),
+                line(sha256("missing"), "missing.txt", "missing")));
+
+        ClientManifest.Delta delta = remote.diff(installed, dir);
+
+        // Файлы без записи в установленном манифесте сверяются по хэшу с диска
+        assertEquals(List.of("mods/changed.jar", "config/resized.json", "libraries/tampered.jar", "missing.txt"),
+                delta.toDownload().stream().map(ClientManifest.Entry::path).toList());
+        // Удаляется только то, что ставил лаунчер; мод игрока не трогается
+        assertEquals(List.of("mods/dropped.jar"), delta.toDelete());
+        assertEquals(3 + 11 + 8 + 7, delta.downloadSize());
+    }
+
+    @Test
+    void diffWithoutInstalledManifestHashesEverything() throws Exception {
+        String kept = write("mods/kept.jar", "kept");
+        write("mods/stale.jar", "stale");
+        ClientManifest remote = ClientManifest.parse(String.join("\n",
+                line(kept, "mods/kept.jar", "kept"),
+                line(sha256("fresh"), "mods/stale.jar", "fresh")));
+
+        ClientManifest.Delta delta = remote.diff(null, dir);
+
+        assertEquals(List.of("mods/stale.jar"), delta.toDownload().stream().map(ClientManifest.Entry::path).toList());
+        assertTrue(delta.toDelete().isEmpty());
+    }
+
+    @Test
+    void diffRejectsPathsOutsideInstallDirectory() throws Exception {
+        ClientManifest remote = ClientManifest.parse(line(sha256("x"), "../outside.txt", "x"));
+
+        assertThrows(IOException.class, () -> remote.diff(null, dir));
+    }
+
+    @Test
+    void resolveSafelyKeepsPathsInsideRoot() throws Exception {
+        Path root = dir.toAbsolutePath().normalize();
+
+        assertEquals(root.resolve("mods/a.jar"), ClientManifest.resolveSafely(root, "mods/a.jar"));
+        assertEquals(root.resolve("mods/a.jar"), ClientManifest.resolveSafely(root, "config/../mods/a.jar"));
+        for (String escape : List.of("../a.jar", "mods/../../a.jar", "..", ".", "", root.getRoot() + "etc/passwd")) {
+            assertThrows(IOException.class, () -> ClientManifest.resolveSafely(root, escape), escape);
+        }
+    }
+
+    @Test
+    void parseNormalizesPathsAndRejectsBadLines() throws Exception {
+        ClientManifest manifest = ClientManifest.parse("# comment\r\nABCDEF 5 ./mods\\a.jar\n\nabc 3 name with spaces.txt\n");
+
+        assertEquals(new ClientManifest.Entry("mods/a.jar", 5, "abcdef"), manifest.get("mods/a.jar"));
+        assertEquals(3, manifest.get("name with spaces.txt").size());
+        assertThrows(IOException.class, () -> ClientManifest.parse("abc mods/a.jar"));
+        assertThrows(IOException.class, () -> ClientManifest.parse("abc big mods/a.jar"));
+    }
+
+    @Test
+    void installOnceCoversPlayerDataAndModConfigs() {
+        for (String path : List.of("options.txt", "servers.dat", "saves/world/level.dat", "mods/config/sodium.json")) {
+            assertTrue(ClientManifest.isInstallOnce(path), path);
+        }
+        for (String path : List.of("mods/sodium.jar", "mods/nested/lib.JAR", "config/fabric.json", "libraries/a.jar", "mods")) {
+            assertFalse(ClientManifest.isInstallOnce(path), path);
+        }
+    }
+
+    private String write(String relative, String content) throws IOException {
+        Path file = dir.resolve(relative);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+        return sha256(content);
+    }
+
+    private static String line(String sha256, String path, String content) {
+        return sha256 + " " + content.getBytes(StandardCharsets.UTF_8).length + " " + path;
+    }
+
+    private static String sha256(String content) throws IOException {
+        return Checksums.toHex(Checksums.newSha256().digest(content.getBytes(StandardCharsets.UTF_8)));
+    }
+}
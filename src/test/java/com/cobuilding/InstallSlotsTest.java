@@ -0,0 +1,192 @@
+package com.cobuilding;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InstallSlotsTest {
+
+    // Как у лаунчера: манифест переносит само переключение, а не обход записей верхнего уровня
+    private static final Set<String> PRESERVED = Set.of("mods", "saves", "options.txt", "manifest.txt", "slots", "trash",
+            "integrity-index.txt");
+
+    @TempDir
+    Path dir;
+
+    private final List<Path> trashDirs = new ArrayList<>();
+
+    /** Корзина чистится в фоне: ждем ее, иначе она спорит с удалением временной папки. */
+    @AfterEach
+    void awaitTrash() throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        for (Path trash : trashDirs) {
+            while (Files.isDirectory(trash) && !isEmpty(trash) && System.nanoTime() < deadline) {
+                Thread.sleep(20);
+            }
+        }
+    }
+
+    @Test
+    void recoversFromCrashAtEveryMoveOfFullSwitch() throws Exception {
+        recoversFromCrashAtEveryMove(true);
+    }
+
+    @Test
+    void recoversFromCrashAtEveryMoveOfPartialSwitch() throws Exception {
+        recoversFromCrashAtEveryMove(false);
+    }
+
+    @Test
+    void finishedJournalReportsSwitchedVersion() throws Exception {
+        Path game = dir.resolve("game");
+        InstallSlots slots = prepare(game, true);
+        slots.switchTo(slots.staged(), "v1");
+
+        // Упали до записи новой версии: переключение прошло, осталось его закончить
+        assertEquals("v2", slots.recoverSwitch());
+        slots.finishSwitch();
+        assertNull(slots.recoverSwitch());
+        assertEquals("v2", Files.readString(game.resolve("libraries/core.jar")));
+    }
+
+    @Test
+    void rollbackRemovesFilesMergedIntoPreservedFolders() throws Exception {
+        Path game = dir.resolve("game");
+        InstallSlots slots = prepare(game, true);
+        Map<String, String> before = live(snapshot(game));
+        slots.switchTo(slots.staged(), "v1");
+        slots.finishSwitch();
+        assertTrue(Files.exists(game.resolve("mods/added.jar")));
+        assertEquals("index", Files.readString(game.resolve("integrity-index.txt")), "состояние лаунчера не переключается");
+
+        assertEquals("v1", slots.rollback("v2"));
+        slots.finishSwitch();
+
+        assertEquals(before, live(snapshot(game)));
+        assertFalse(Files.exists(game.resolve("shaders")), "новая папка клиента уходит при откате");
+    }
+
+    private void recoversFromCrashAtEveryMove(boolean full) throws Exception {
+        Path template = dir.resolve("template");
+        InstallSlots reference = prepare(template, full);
+        Map<String, String> before = snapshot(template);
+        reference.switchTo(reference.staged(), "v1");
+        // Пути в журнале относительные, так что он подходит к любой копии той же установки
+        List<String> journal = Files.readAllLines(template.resolve("slots/switch.journal"));
+        assertEquals("done", journal.get(journal.size() - 1));
+        List<String> plan = journal.subList(0, journal.size() - 1);
+        int moves = plan.size() - 1;
+        assertTrue(moves > 3, "переносов: " + moves);
+
+        for (int done = 0; done <= moves; done++) {
+            Path game = dir.resolve("crash-" + full + "-" + done);
+            prepare(game, full);
+            crashAfter(game, plan, done);
+
+            InstallSlots slots = slots(game);
+            assertNull(slots.recoverSwitch(), "переносов сделано: " + done);
+
+            assertEquals(before, snapshot(game), "переносов сделано: " + done);
+            assertFalse(Files.exists(game.resolve("slots/switch.journal")));
+            InstallSlots.Slot staged = slots.staged();
+            assertNotNull(staged);
+            assertTrue(staged.appliesTo("v2", "v1"), "слот снова готов к переключению");
+        }
+    }
+
+    /**
+     * Повторяет начало переключения: журнал записан целиком, а сделана только часть
+     * переносов из него, как если бы компьютер выключился посреди них.
+     */
+    private static void crashAfter(Path game, List<String> plan, int done) throws IOException {
+        Files.createDirectories(game.resolve("slots/previous/files"));
+        Files.write(game.resolve("slots/switch.journal"), plan);
+        for (String line : plan.subList(1, 1 + done)) {
+            String[] parts = line.split("\t");
+            Path target = game.resolve(parts[2]);
+            Files.createDirectories(target.getParent());
+            Files.move(game.resolve(parts[1]), target);
+        }
+    }
+
+    /** Версия v1 на месте и собранный слот v2 с заменой, новыми файлами и файлами в пользовательских папках. */
+    private InstallSlots prepare(Path game, boolean full) throws IOException {
+        write(game, "libraries/core.jar", "v1");
+        write(game, "libraries/old.jar", "old");
+        write(game, "mods/fabric-api.jar", "api-v1");
+        write(game, "mods/user.jar", "мод игрока");
+        write(game, "saves/world/level.dat", "мир");
+        write(game, "options.txt", "настройки");
+        write(game, "integrity-index.txt", "index");
+        write(game, "manifest.txt", "manifest-v1");
+
+        InstallSlots slots = slots(game);
+        Path staging = slots.beginStaging();
+        Path files = InstallSlots.filesOf(staging);
+        write(files, "libraries/core.jar", "v2");
+        write(files, "mods/fabric-api.jar", "api-v2");
+        write(files, "mods/added.jar", "added");
+        write(files, "shaders/pack.txt", "pack");
+        Files.writeString(InstallSlots.manifestOf(staging), "manifest-v2");
+        slots.commitStaging("v2", full ? "" : "v1", full, null, full ? List.of() : List.of("libraries/old.jar"));
+        return slots;
+    }
+
+    private InstallSlots slots(Path game) {
+        trashDirs.add(game.resolve("trash"));
+        return new InstallSlots(game, PRESERVED, new TreeDeleter(game.resolve("trash"), 2));
+    }
+
+    private static boolean isEmpty(Path directory) throws IOException {
+        try (Stream<Path> stream = Files.list(directory)) {
+            return stream.findAny().isEmpty();
+        }
+    }
+
+    private static void write(Path root, String relative, String content) throws IOException {
+        Path file = root.resolve(relative);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+    }
+
+    /** Файлы папки клиента и слота с содержимым; служебные файлы переключения не в счет. */
+    private static Map<String, String> snapshot(Path game) throws IOException {
+        Map<String, String> files = new TreeMap<>();
+        try (Stream<Path> walk = Files.walk(game)) {
+            for (Path path : (Iterable<Path>) walk::iterator) {
+                String relative = game.relativize(path).toString().replace('\\', '/');
+                if (!Files.isRegularFile(path) || relative.startsWith("slots/previous/") || relative.startsWith("slots/rollback/")
+                        || relative.startsWith("trash/") || relative.startsWith("slots/switch.journal")
+                        || relative.endsWith("slot.properties") || relative.endsWith("deleted.txt")) {
+                    continue;
+                }
+                files.put(relative, Files.readString(path));
+            }
+        }
+        return files;
+    }
+
+    /** Только файлы самой папки клиента, без слотов. */
+    private static Map<String, String> live(Map<String, String> snapshot) {
+        Map<String, String> files = new TreeMap<>(snapshot);
+        files.keySet().removeIf(path -> path.startsWith("slots/"));
+        return files;
+    }
+}
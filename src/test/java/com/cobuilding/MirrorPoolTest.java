@@ -0,0 +1,156 @@
+package com.cobuilding;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static com.cobuilding.SegmentedDownloaderTest.assertNoLeftovers;
+import static com.cobuilding.SegmentedDownloaderTest.payload;
+import static com.cobuilding.SegmentedDownloaderTest.sha256;
+import static com.cobuilding.SegmentedDownloaderTest.writeMeta;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MirrorPoolTest {
+
+    // Восемь диапазонов по MIN_SEGMENT_SIZE: без отключения плохое зеркало получало бы каждый из них
+    private static final int SIZE = 32 * 1024 * 1024;
+    private static final int WORKERS = 4;
+    private static final long PROBE_BYTES = 256 * 1024;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void retiresMirrorThatDropsConnections() throws Exception {
+        byte[] payload = payload(11, SIZE);
+        Path target = dir.resolve("client.zip");
+        // У плохого зеркала задержка меньше, так что по оценке оно лучшее и диапазоны сначала идут к нему
+        try (TestFileServer good1 = new TestFileServer(payload, "\"v1\"").withDelay(30);
+             TestFileServer good2 = new TestFileServer(payload, "\"v1\"").withDelay(30);
+             TestFileServer bad = new TestFileServer(payload, "\"v1\"")) {
+            // Проба проходит, а на диапазоны приходят заголовки и обрыв без единого байта
+            bad.intercept((exchange, number) -> {
+                if (number == 1) return false;
+                exchange.sendResponseHeaders(206, 1024);
+                return true;
+            });
+
+            String sha256 = downloader().download(List.of(good1.url(), bad.url(), good2.url()), target, (done, total) -> {});
+
+            assertEquals(sha256(payload), sha256);
+            assertArrayEquals(payload, Files.readAllBytes(target));
+            int badRanges = bad.requests() - 1;
+            assertTrue(badRanges > 0, "плохое зеркало не получило ни одного диапазона");
+            // После отключения запросов к зеркалу нет: только те, что успели уйти до второго обрыва подряд
+            assertTrue(badRanges <= WORKERS + 1, "запросов к плохому зеркалу: " + badRanges);
+        }
+        assertNoLeftovers(target);
+    }
+
+    @Test
+    void retiresMirrorThatAnswersIfRangeWithOtherFile() throws Exception {
+        byte[] payload = payload(12, SIZE);
+        byte[] other = payload(13, SIZE);
+        Path target = dir.resolve("client.zip");
+        try (TestFileServer good1 = new TestFileServer(payload, "\"v1\"").withDelay(30);
+             TestFileServer good2 = new TestFileServer(payload, "\"v1\"").withDelay(30);
+             TestFileServer bad = new TestFileServer(payload, "\"v1\"")) {
+            // Зеркало успело обновиться после пробы: на If-Range отдает 200 и другой файл того же размера
+            bad.intercept((exchange, number) -> {
+                if (number == 1) return false;
+                exchange.sendResponseHeaders(200, other.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(other);
+                } catch (IOException e) {
+                    // Клиент закрывает ответ, не дочитав
+                }
+                return true;
+            });
+
+            String sha256 = downloader().download(List.of(good1.url(), bad.url(), good2.url()), target, (done, total) -> {});
+
+            assertEquals(sha256(payload), sha256);
+            assertArrayEquals(payload, Files.readAllBytes(target));
+            int badRanges = bad.requests() - 1;
+            assertTrue(badRanges > 0, "плохое зеркало не получило ни одного диапазона");
+            // Подмена файла отключает зеркало сразу, повторов на нем нет
+            assertTrue(badRanges <= WORKERS, "запросов к плохому зеркалу: " + badRanges);
+        }
+        assertNoLeftovers(target);
+    }
+
+    @Test
+    void resumesWithMirrorsWhenOriginValidatorMatches() throws Exception {
+        byte[] payload = payload(14, SIZE);
+        Path target = dir.resolve("client.zip");
+        int done = SIZE / 2;
+        try (TestFileServer origin = new TestFileServer(payload, "\"v1\"");
+             TestFileServer mirror = new TestFileServer(payload, "\"v1\"")) {
+            byte[] part = new byte[SIZE];
+            System.arraycopy(payload, 0, part, 0, done);
+            Files.write(dir.resolve("client.zip.part"), part);
+            writeMeta(dir.resolve("client.zip.part.meta"), origin.url(), SIZE, "\"v1\"",
+                    "0-" + (done - 1) + ":" + done + "," + done + "-" + (SIZE - 1) + ":0");
+
+            String sha256 = downloader().download(List.of(origin.url(), mirror.url()), target, (d, t) -> {});
+
+            assertEquals(sha256(payload), sha256);
+            assertEquals(2 * PROBE_BYTES + SIZE - done, origin.bytesServed() + mirror.bytesServed());
+        }
+        assertNoLeftovers(target);
+    }
+
+    @Test
+    void discardsPartWhenOriginValidatorChanged() throws Exception {
+        byte[] payload = payload(15, SIZE);
+        Path target = dir.resolve("client.zip");
+        int done = SIZE / 2;
+        try (TestFileServer origin = new TestFileServer(payload, "\"v2\"");
+             TestFileServer mirror = new TestFileServer(payload, "\"v2\"")) {
+            // Куски прошлой версии того же размера: смешивать их с новой нельзя
+            Files.write(dir.resolve("client.zip.part"), payload(16, SIZE));
+            writeMeta(dir.resolve("client.zip.part.meta"), origin.url(), SIZE, "\"v1\"",
+                    "0-" + (done - 1) + ":" + done + "," + done + "-" + (SIZE - 1) + ":0");
+
+            String sha256 = downloader().download(List.of(origin.url(), mirror.url()), target, (d, t) -> {});
+
+            assertEquals(sha256(payload), sha256);
+            assertArrayEquals(payload, Files.readAllBytes(target));
+        }
+        assertNoLeftovers(target);
+    }
+
+    @Test
+    void discardsPartSavedWithoutValidator() throws Exception {
+        byte[] payload = payload(17, SIZE);
+        Path target = dir.resolve("client.zip");
+        int done = SIZE / 2;
+        try (TestFileServer origin = new TestFileServer(payload, "\"v2\"");
+             TestFileServer mirror = new TestFileServer(payload, "\"v2\"")) {
+            // Состояние без валидатора нельзя сверить с файлом на зеркалах, совпадения размера мало
+            Files.write(dir.resolve("client.zip.part"), payload(18, SIZE));
+            writeMeta(dir.resolve("client.zip.part.meta"), origin.url(), SIZE, null,
+                    "0-" + (done - 1) + ":" + done + "," + done + "-" + (SIZE - 1) + ":0");
+
+            String sha256 = downloader().download(List.of(origin.url(), mirror.url()), target, (d, t) -> {});
+
+            assertEquals(sha256(payload), sha256);
+            assertArrayEquals(payload, Files.readAllBytes(target));
+        }
+        assertNoLeftovers(target);
+    }
+
+    private SegmentedDownloader downloader() {
+        return new SegmentedDownloader(client, "AuroraLauncher/test", WORKERS);
+    }
+}
@@ -0,0 +1,142 @@
+package com.cobuilding;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SegmentedDownloaderTest {
+
+    // Больше двух MIN_SEGMENT_SIZE, чтобы файл резался на несколько диапазонов
+    private static final int SIZE = 10 * 1024 * 1024;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void downloadsInParallelRangesFromRangeServer() throws Exception {
+        byte[] payload = payload(1);
+        Path target = dir.resolve("client.zip");
+        try (TestFileServer server = new TestFileServer(payload, "\"v1\"")) {
+            String sha256 = downloader().download(server.url(), target, (done, total) -> {});
+
+            assertEquals(sha256(payload), sha256);
+            assertArrayEquals(payload, Files.readAllBytes(target));
+            // Пробный запрос плюс по запросу на каждый из трех диапазонов
+            assertTrue(server.rangeRequests() >= 4, "диапазонов запрошено: " + server.rangeRequests());
+        }
+        assertNoLeftovers(target);
+    }
+
+    @Test
+    void fallsBackToSingleStreamWithoutRanges() throws Exception {
+        byte[] payload = payload(2);
+        Path target = dir.resolve("client.zip");
+        try (TestFileServer server = new TestFileServer(payload, "\"v1\"").withoutRanges()) {
+            String sha256 = downloader().download(server.url(), target, (done, total) -> {});
+
+            assertEquals(sha256(payload), sha256);
+            assertArrayEquals(payload, Files.readAllBytes(target));
+            assertEquals(0, server.rangeRequests());
+        }
+        assertNoLeftovers(target);
+    }
+
+    @Test
+    void resumesFromPartAndMeta() throws Exception {
+        byte[] payload = payload(3);
+        Path target = dir.resolve("client.zip");
+        int firstEnd = 4 * 1024 * 1024;
+        int secondDone = 1_000_000;
+        try (TestFileServer server = new TestFileServer(payload, "\"v1\"")) {
+            // Первый диапазон докачан целиком, второй — частично, остальное в .part нули
+            byte[] part = new byte[SIZE];
+            System.arraycopy(payload, 0, part, 0, firstEnd + secondDone);
+            Files.write(dir.resolve("client.zip.part"), part);
+            writeMeta(dir.resolve("client.zip.part.meta"), server.url(), SIZE, "\"v1\"",
+                    "0-" + (firstEnd - 1) + ":" + firstEnd + "," + firstEnd + "-" + (SIZE - 1) + ":" + secondDone);
+
+            String sha256 = downloader().download(server.url(), target, (done, total) -> {});
+
+            assertEquals(sha256(payload), sha256);
+            assertArrayEquals(payload, Files.readAllBytes(target));
+            // Один байт на пробу, остальное — только недокачанный хвост
+            assertEquals(1 + SIZE - firstEnd - secondDone, server.bytesServed());
+        }
+        assertNoLeftovers(target);
+    }
+
+    @Test
+    void restartsWhenIfRangeIsAnsweredWithFullFile() throws Exception {
+        byte[] oldPayload = payload(4);
+        byte[] newPayload = payload(5);
+        Path target = dir.resolve("client.zip");
+        AtomicBoolean replaced = new AtomicBoolean();
+        try (TestFileServer server = new TestFileServer(oldPayload, "\"v1\"")) {
+            // Новая версия выходит между пробой и первым диапазоном: на If-Range "v1" сервер отвечает 200
+            server.intercept((exchange, number) -> {
+                if (exchange.getRequestHeaders().containsKey("If-Range") && replaced.compareAndSet(false, true)) {
+                    server.replace(newPayload, "\"v2\"");
+                }
+                return false;
+            });
+
+            String sha256 = downloader().download(server.url(), target, (done, total) -> {});
+
+            assertTrue(replaced.get());
+            assertEquals(sha256(newPayload), sha256);
+            assertArrayEquals(newPayload, Files.readAllBytes(target));
+        }
+        assertNoLeftovers(target);
+    }
+
+    private SegmentedDownloader downloader() {
+        return new SegmentedDownloader(client, "AuroraLauncher/test", 4);
+    }
+
+    static byte[] payload(long seed) {
+        return payload(seed, SIZE);
+    }
+
+    static byte[] payload(long seed, int size) {
+        byte[] payload = new byte[size];
+        new Random(seed).nextBytes(payload);
+        return payload;
+    }
+
+    static String sha256(byte[] bytes) throws NoSuchAlgorithmException {
+        return Checksums.toHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+    }
+
+    static void writeMeta(Path stateFile, String url, long total, String validator, String segments) throws IOException {
+        Properties props = new Properties();
+        props.setProperty("url", url);
+        props.setProperty("total", String.valueOf(total));
+        if (validator != null) props.setProperty("validator", validator);
+        props.setProperty("segments", segments);
+        try (Writer writer = Files.newBufferedWriter(stateFile)) {
+            props.store(writer, null);
+        }
+    }
+
+    static void assertNoLeftovers(Path target) {
+        assertFalse(Files.exists(target.resolveSibling(target.getFileName() + ".part")));
+        assertFalse(Files.exists(target.resolveSibling(target.getFileName() + ".part.meta")));
+    }
+}
@@ -0,0 +1,132 @@
+package com.cobuilding;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * HTTP-сервер в том же процессе, отдающий один файл с поддержкой Range/If-Range.
+ * Сломанное поведение для отдельных запросов задается через {@link Interceptor}.
+ */
+final class TestFileServer implements AutoCloseable {
+
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+    interface Interceptor {
+        /** @return true, если запрос обработан здесь и обычный ответ не нужен */
+        boolean handle(HttpExchange exchange, int requestNumber) throws IOException;
+    }
+
+    private final HttpServer server;
+    private final String url;
+    private volatile byte[] payload;
+    private volatile String etag;
+    private volatile boolean ranges = true;
+    private volatile long delayMillis;
+    private volatile Interceptor interceptor;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger rangeRequests = new AtomicInteger();
+    private final AtomicLong bytesServed = new AtomicLong();
+
+    TestFileServer(byte[] payload, String etag) throws IOException {
+        this.payload = payload;
+        this.etag = etag;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/client.zip", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/client.zip";
+    }
+
+    String url() {
+        return url;
+    }
+
+    TestFileServer withoutRanges() {
+        ranges = false;
+        return this;
+    }
+
+    TestFileServer withDelay(long millis) {
+        delayMillis = millis;
+        return this;
+    }
+
+    TestFileServer intercept(Interceptor interceptor) {
+        this.interceptor = interceptor;
+        return this;
+    }
+
+    /** Подменяет файл на сервере, как при выходе новой версии. */
+    void replace(byte[] payload, String etag) {
+        this.payload = payload;
+        this.etag = etag;
+    }
+
+    int requests() {
+        return requests.get();
+    }
+
+    int rangeRequests() {
+        return rangeRequests.get();
+    }
+
+    long bytesServed() {
+        return bytesServed.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            int number = requests.incrementAndGet();
+            if (delayMillis > 0) {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            Interceptor current = interceptor;
+            if (current != null && current.handle(exchange, number)) return;
+            serve(exchange, payload, etag);
+        }
+    }
+
+    /** Обычный ответ: 206 на Range, если валидатор из If-Range совпал, иначе весь файл с кодом 200. */
+    void serve(HttpExchange exchange, byte[] body, String tag) throws IOException {
+        if (tag != null) exchange.getResponseHeaders().add("ETag", tag);
+        String range = ranges ? exchange.getRequestHeaders().getFirst("Range") : null;
+        String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+        Matcher matcher = range == null ? null : RANGE.matcher(range);
+        int from = 0;
+        int to = body.length - 1;
+        if (matcher != null && matcher.matches() && (ifRange == null || ifRange.equals(tag))) {
+            rangeRequests.incrementAndGet();
+            exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+            from = Integer.parseInt(matcher.group(1));
+            if (!matcher.group(2).isEmpty()) to = Math.min(to, Integer.parseInt(matcher.group(2)));
+            exchange.getResponseHeaders().add("Content-Range", "bytes " + from + "-" + to + "/" + body.length);
+            exchange.sendResponseHeaders(206, to - from + 1);
+        } else {
+            exchange.sendResponseHeaders(200, body.length);
+        }
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body, from, to - from + 1);
+        }
+        bytesServed.addAndGet(to - from + 1);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}